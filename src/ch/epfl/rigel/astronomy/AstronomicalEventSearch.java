@@ -0,0 +1,464 @@
+package ch.epfl.rigel.astronomy;
+
+import ch.epfl.rigel.Preconditions;
+import ch.epfl.rigel.coordinates.EclipticCoordinates;
+import ch.epfl.rigel.coordinates.EclipticToEquatorialConversion;
+import ch.epfl.rigel.coordinates.EquatorialCoordinates;
+import ch.epfl.rigel.coordinates.PrecessionConversion;
+import ch.epfl.rigel.math.Angle;
+import ch.epfl.rigel.math.RootFinder;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Astronomical event search
+ *
+ * Searches long spans of time for conjunctions, oppositions, greatest elongations, phases of the Moon and close
+ * approaches between planets and stars, seen from the center of the Earth.
+ *
+ * Each event is the root or the maximum of a quantity depending on the positions of two objects: the difference of
+ * their ecliptic longitudes for conjunctions, oppositions and phases, the cosine of their angular separation for
+ * elongations and close approaches. The span is split into chunks of about a year, searched in parallel: the positions
+ * of all objects are sampled over the chunk, the samples bracket the events, which are then refined to the nearest
+ * second. Chunks are handed to the consumer in chronological order as soon as they and all the chunks before them
+ * are complete, so that the first events are available long before the end of the search.
+ *
+ * The positions of the stars are those of the catalogue (J2000), they are precessed to the middle of every chunk to be
+ * compared with the positions of the planets, which are referred to the equinox of the date.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class AstronomicalEventSearch {
+
+    /**
+     * Kinds of events
+     */
+    public enum Type {
+        CONJUNCTION("Conjunction"), OPPOSITION("Opposition"), GREATEST_ELONGATION("Greatest elongation"),
+        NEW_MOON("New Moon"), FIRST_QUARTER("First quarter"), FULL_MOON("Full Moon"), LAST_QUARTER("Last quarter"),
+        CLOSE_APPROACH("Close approach");
+
+        /**
+         * List of all kinds of events
+         */
+        public static final List<Type> ALL = List.of(Type.values());
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the name of the kind of event, as displayed
+         * @return name of the kind of event
+         */
+        public String label() {
+            return label;
+        }
+    }
+
+    //Sampling step (in days), shorter than half the time between two events of the same quantity
+    private static final double SAMPLING_STEP = 0.5;
+    //About a year of samples per chunk
+    private static final int SAMPLES_PER_CHUNK = 730;
+    //Fastest motion of a planet seen from the Earth (Mercury, about 2.2°/day), in radians per day
+    private static final double MAX_PLANET_RATE = Angle.ofDeg(2.5);
+    //Largest ecliptic latitude of a planet seen from the Earth (Venus, about 8.5°)
+    private static final double MAX_PLANET_LATITUDE = Angle.ofDeg(9);
+    //Epoch of the positions of the stars in the catalogue
+    private static final ZonedDateTime CATALOGUE_EPOCH = ZonedDateTime.of(2000, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    //Moving objects: the Sun, the Moon and the planets (the Earth excepted), followed by the stars
+    private static final List<CelestialObjectModel<? extends CelestialObject>> MODELS = models();
+    private static final int SUN = 0;
+    private static final int MOON = 1;
+    private static final int FIRST_PLANET = 2;
+
+    private final List<Star> stars;
+    private final double closeApproachDistance;
+    private final Executor executor;
+
+    /**
+     * Constructs a search of events, run on the common fork/join pool
+     * @param stars stars approached by the planets (only the stars close to the ecliptic can be approached)
+     * @param closeApproachDistance largest separation of a close approach between a planet and a star (in radians)
+     * @throws IllegalArgumentException if the distance is not strictly positive
+     */
+    public AstronomicalEventSearch(List<Star> stars, double closeApproachDistance) {
+        this(stars, closeApproachDistance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a search of events
+     * @param stars stars approached by the planets (only the stars close to the ecliptic can be approached)
+     * @param closeApproachDistance largest separation of a close approach between a planet and a star (in radians)
+     * @param executor executor searching the chunks of time
+     * @throws IllegalArgumentException if the distance is not strictly positive
+     */
+    public AstronomicalEventSearch(List<Star> stars, double closeApproachDistance, Executor executor) {
+        Preconditions.checkArgument(closeApproachDistance > 0);
+        this.closeApproachDistance = closeApproachDistance;
+        this.executor = executor;
+
+        //Stars further from the ecliptic than any planet can be are never approached
+        EclipticToEquatorialConversion reference = new EclipticToEquatorialConversion(CATALOGUE_EPOCH);
+        List<Star> approachable = new ArrayList<>();
+        for (Star star : stars) {
+            EclipticCoordinates position = reference.inverseApply(star.equatorialPos());
+            if (Math.abs(position.lat()) <= MAX_PLANET_LATITUDE + closeApproachDistance) approachable.add(star);
+        }
+        this.stars = List.copyOf(approachable);
+    }
+
+    private static List<CelestialObjectModel<? extends CelestialObject>> models() {
+        List<CelestialObjectModel<? extends CelestialObject>> models = new ArrayList<>();
+        models.add(SunModel.SUN);
+        models.add(MoonModel.MOON);
+        for (PlanetModel planet : PlanetModel.ALL) {
+            if (planet != PlanetModel.EARTH) models.add(planet);
+        }
+        return List.copyOf(models);
+    }
+
+    /**
+     * Searches the events between two times, and gives them to the consumer in chronological order as they are found.
+     * The consumer is called from the calling thread, which is blocked until the end of the search
+     * @param start start of the search
+     * @param end end of the search (excluded)
+     * @param types kinds of events searched
+     * @param consumer consumer of the events
+     * @throws IllegalArgumentException if the end is not after the start
+     */
+    public void search(ZonedDateTime start, ZonedDateTime end, Set<Type> types, Consumer<Event> consumer) {
+        Preconditions.checkArgument(end.isAfter(start));
+        double duration = RootFinder.daysBetween(start, end);
+        Run run = new Run(start, duration, quantities(types));
+
+        int samples = (int) Math.ceil(duration / SAMPLING_STEP);
+        List<CompletableFuture<List<Event>>> chunks = new ArrayList<>();
+        for (int k0 = 0; k0 < samples; k0 += SAMPLES_PER_CHUNK) {
+            int first = k0, last = Math.min(k0 + SAMPLES_PER_CHUNK, samples);
+            chunks.add(CompletableFuture.supplyAsync(() -> run.searchChunk(first, last), executor));
+        }
+        //Maxima are refined up to a sampling step before the first sample of their chunk, so the events of a chunk
+        //after the first sample of the next chunk minus a step are held back and sorted with those of the next chunk
+        List<Event> held = new ArrayList<>();
+        for (int c = 0; c < chunks.size(); ++c) {
+            List<Event> events = new ArrayList<>(held);
+            events.addAll(chunks.get(c).join());
+            events.sort(Comparator.comparing(Event::when));
+            held.clear();
+            ZonedDateTime heldFrom = c + 1 < chunks.size()
+                    ? RootFinder.plusDays(start, ((c + 1) * SAMPLES_PER_CHUNK - 1) * SAMPLING_STEP)
+                    : null;
+            for (Event event : events) {
+                if (heldFrom != null && !event.when().isBefore(heldFrom)) held.add(event);
+                else consumer.accept(event);
+            }
+        }
+    }
+
+    /**
+     * Searches the events between two times
+     * @param start start of the search
+     * @param end end of the search (excluded)
+     * @param types kinds of events searched
+     * @return events found, in chronological order
+     * @throws IllegalArgumentException if the end is not after the start
+     */
+    public List<Event> search(ZonedDateTime start, ZonedDateTime end, Set<Type> types) {
+        List<Event> events = new ArrayList<>();
+        search(start, end, types, events::add);
+        return events;
+    }
+
+    private List<Quantity> quantities(Set<Type> types) {
+        List<Quantity> quantities = new ArrayList<>();
+        int bodies = MODELS.size();
+        for (int p = FIRST_PLANET; p < bodies; ++p) {
+            PlanetModel planet = (PlanetModel) MODELS.get(p);
+            boolean inferior = planet == PlanetModel.MERCURY || planet == PlanetModel.VENUS;
+            if (types.contains(Type.CONJUNCTION)) {
+                quantities.add(Quantity.root(Type.CONJUNCTION, p, SUN, 0));
+                for (int q = p + 1; q < bodies; ++q) {
+                    quantities.add(Quantity.root(Type.CONJUNCTION, p, q, 0));
+                }
+            }
+            if (types.contains(Type.OPPOSITION) && !inferior)
+                quantities.add(Quantity.root(Type.OPPOSITION, p, SUN, Math.PI));
+            //The elongation is greatest when the cosine of the separation is smallest
+            if (types.contains(Type.GREATEST_ELONGATION) && inferior)
+                quantities.add(Quantity.maximum(Type.GREATEST_ELONGATION, p, SUN, -1,
+                        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY));
+            if (types.contains(Type.CLOSE_APPROACH)) {
+                //Samples closer than the distance plus the motion of a step may bracket a close approach
+                double sampleThreshold = Math.cos(Math.min(closeApproachDistance + MAX_PLANET_RATE * SAMPLING_STEP, Math.PI));
+                for (int s = 0; s < stars.size(); ++s) {
+                    quantities.add(Quantity.maximum(Type.CLOSE_APPROACH, p, bodies + s, 1,
+                            sampleThreshold, Math.cos(closeApproachDistance)));
+                }
+            }
+        }
+        Type[] phases = {Type.NEW_MOON, Type.FIRST_QUARTER, Type.FULL_MOON, Type.LAST_QUARTER};
+        for (int i = 0; i < phases.length; ++i) {
+            if (types.contains(phases[i])) quantities.add(Quantity.root(phases[i], MOON, SUN, i * Math.PI / 2));
+        }
+        return quantities;
+    }
+
+    private String nameOf(int object, double startDays, EclipticToEquatorialConversion conversion) {
+        return object < MODELS.size()
+                ? MODELS.get(object).at(startDays, conversion).name()
+                : stars.get(object - MODELS.size()).name();
+    }
+
+    //Quantity depending on the positions of two objects, whose roots or maxima are events
+    private static final class Quantity {
+        private final Type type;
+        private final int first, second;
+        private final boolean root;
+        //Root: difference of ecliptic longitudes minus the offset, wrapped to [-π, π]
+        private final double offset;
+        //Maximum: sign times the cosine of the separation, with thresholds on the samples and on the refined maximum
+        //(the sign of roots is 1)
+        private final double sign, sampleThreshold, eventThreshold;
+
+        private Quantity(Type type, int first, int second, boolean root, double offset, double sign,
+                         double sampleThreshold, double eventThreshold) {
+            this.type = type;
+            this.first = first;
+            this.second = second;
+            this.root = root;
+            this.offset = offset;
+            this.sign = sign;
+            this.sampleThreshold = sampleThreshold;
+            this.eventThreshold = eventThreshold;
+        }
+
+        private static Quantity root(Type type, int first, int second, double offset) {
+            return new Quantity(type, first, second, true, offset, 1, 0, 0);
+        }
+
+        private static Quantity maximum(Type type, int first, int second, double sign,
+                                        double sampleThreshold, double eventThreshold) {
+            return new Quantity(type, first, second, false, 0, sign, sampleThreshold, eventThreshold);
+        }
+    }
+
+    //Search of a span of time, shared by the chunks
+    private final class Run {
+        private final ZonedDateTime start;
+        private final double startDays;
+        private final double duration;
+        private final List<Quantity> quantities;
+        private final boolean[] needed = new boolean[MODELS.size()];
+
+        private Run(ZonedDateTime start, double duration, List<Quantity> quantities) {
+            this.start = start;
+            this.startDays = Epoch.J2010.daysUntil(start);
+            this.duration = duration;
+            this.quantities = quantities;
+            for (Quantity quantity : quantities) {
+                needed[quantity.first] = true;
+                if (quantity.second < needed.length) needed[quantity.second] = true;
+            }
+        }
+
+        //Events bracketed by the samples first (included) to last (excluded), sorted by time
+        private List<Event> searchChunk(int first, int last) {
+            //Precessed once per chunk, the stars drift by less than 30" from their position of date
+            double[][] starVectors = starVectorsAt(RootFinder.plusDays(start, (first + last) / 2d * SAMPLING_STEP));
+
+            //Samples from first - 1 to last, as maxima are bracketed by the samples around them
+            Positions samples = new Positions(last - first + 2, starVectors);
+            for (int j = 0; j < samples.size; ++j) {
+                samples.set(j, (first - 1 + j) * SAMPLING_STEP, needed);
+            }
+
+            List<Event> events = new ArrayList<>();
+            for (Quantity quantity : quantities) {
+                for (int k = first; k < last; ++k) {
+                    int j = k - first + 1;
+                    if (quantity.root) {
+                        double f0 = samples.difference(quantity, j), f1 = samples.difference(quantity, j + 1);
+                        //Crossings of ±π are jumps of the wrapped difference, not roots
+                        if ((f0 > 0) != (f1 > 0) && Math.abs(f1 - f0) < Math.PI) {
+                            double t = RootFinder.bisect(
+                                    at -> positionsAt(quantity, at, starVectors).difference(quantity, 0),
+                                    k * SAMPLING_STEP, f0, (k + 1) * SAMPLING_STEP);
+                            addEvent(events, quantity, t, starVectors);
+                        }
+                    } else {
+                        double f = samples.cosine(quantity, j);
+                        if (f > quantity.sampleThreshold && f > samples.cosine(quantity, j - 1)
+                                && f >= samples.cosine(quantity, j + 1)) {
+                            double t = RootFinder.maximize(
+                                    at -> positionsAt(quantity, at, starVectors).cosine(quantity, 0),
+                                    (k - 1) * SAMPLING_STEP, (k + 1) * SAMPLING_STEP);
+                            if (positionsAt(quantity, t, starVectors).cosine(quantity, 0) >= quantity.eventThreshold)
+                                addEvent(events, quantity, t, starVectors);
+                        }
+                    }
+                }
+            }
+            events.sort(Comparator.comparing(Event::when));
+            return events;
+        }
+
+        //Unit vectors of the stars precessed to the given time, in equatorial coordinates
+        private double[][] starVectorsAt(ZonedDateTime when) {
+            PrecessionConversion precession = new PrecessionConversion(when);
+            double[][] vectors = new double[3][stars.size()];
+            for (int s = 0; s < stars.size(); ++s) {
+                EquatorialCoordinates position = precession.apply(stars.get(s).equatorialPos());
+                vectors[0][s] = Math.cos(position.dec()) * Math.cos(position.ra());
+                vectors[1][s] = Math.cos(position.dec()) * Math.sin(position.ra());
+                vectors[2][s] = Math.sin(position.dec());
+            }
+            return vectors;
+        }
+
+        private Positions positionsAt(Quantity quantity, double t, double[][] starVectors) {
+            boolean[] objects = new boolean[MODELS.size()];
+            objects[quantity.first] = true;
+            if (quantity.second < objects.length) objects[quantity.second] = true;
+            Positions positions = new Positions(1, starVectors);
+            positions.set(0, t, objects);
+            return positions;
+        }
+
+        private void addEvent(List<Event> events, Quantity quantity, double t, double[][] starVectors) {
+            if (t < 0 || t >= duration) return;
+            ZonedDateTime when = RootFinder.plusDays(start, t);
+            EclipticToEquatorialConversion conversion = new EclipticToEquatorialConversion(when);
+            double cosine = quantity.sign * positionsAt(quantity, t, starVectors).cosine(quantity, 0);
+            double separation = Math.acos(Math.max(-1, Math.min(1, cosine)));
+            events.add(new Event(quantity.type, when, nameOf(quantity.first, startDays + t, conversion),
+                    nameOf(quantity.second, startDays + t, conversion), separation));
+        }
+
+        //Ecliptic longitudes and equatorial unit vectors of the moving objects at some times
+        private final class Positions {
+            private final int size;
+            private final double[][] lon, x, y, z;
+            //Unit vectors of the stars, indexed by coordinate then by star
+            private final double[][] starVectors;
+
+            private Positions(int size, double[][] starVectors) {
+                this.size = size;
+                this.starVectors = starVectors;
+                int objects = MODELS.size();
+                lon = new double[objects][size];
+                x = new double[objects][size];
+                y = new double[objects][size];
+                z = new double[objects][size];
+            }
+
+            private void set(int j, double t, boolean[] objects) {
+                EclipticToEquatorialConversion conversion =
+                        new EclipticToEquatorialConversion(RootFinder.plusDays(start, t));
+                for (int i = 0; i < objects.length; ++i) {
+                    if (!objects[i]) continue;
+                    EquatorialCoordinates position = MODELS.get(i).at(startDays + t, conversion).equatorialPos();
+                    lon[i][j] = conversion.inverseApply(position).lon();
+                    x[i][j] = Math.cos(position.dec()) * Math.cos(position.ra());
+                    y[i][j] = Math.cos(position.dec()) * Math.sin(position.ra());
+                    z[i][j] = Math.sin(position.dec());
+                }
+            }
+
+            private double difference(Quantity quantity, int j) {
+                return Math.IEEEremainder(lon[quantity.first][j] - lon[quantity.second][j] - quantity.offset, Angle.TAU);
+            }
+
+            private double cosine(Quantity quantity, int j) {
+                int a = quantity.first, b = quantity.second;
+                double product;
+                if (b < MODELS.size()) {
+                    product = x[a][j] * x[b][j] + y[a][j] * y[b][j] + z[a][j] * z[b][j];
+                } else {
+                    int s = b - MODELS.size();
+                    product = x[a][j] * starVectors[0][s] + y[a][j] * starVectors[1][s] + z[a][j] * starVectors[2][s];
+                }
+                return quantity.sign * product;
+            }
+        }
+    }
+
+    /**
+     * Event found by a search
+     */
+    public static final class Event {
+        private final Type type;
+        private final ZonedDateTime when;
+        private final String first;
+        private final String second;
+        private final double separation;
+
+        private Event(Type type, ZonedDateTime when, String first, String second, double separation) {
+            this.type = type;
+            this.when = when;
+            this.first = first;
+            this.second = second;
+            this.separation = separation;
+        }
+
+        /**
+         * Returns the kind of event
+         * @return kind of event
+         */
+        public Type type() {
+            return type;
+        }
+
+        /**
+         * Returns the time of the event
+         * @return time of the event
+         */
+        public ZonedDateTime when() {
+            return when;
+        }
+
+        /**
+         * Returns the name of the first object of the event (the planet, or the Moon for its phases)
+         * @return name of the first object
+         */
+        public String first() {
+            return first;
+        }
+
+        /**
+         * Returns the name of the second object of the event (the Sun, a planet or a star)
+         * @return name of the second object
+         */
+        public String second() {
+            return second;
+        }
+
+        /**
+         * Returns the angular separation between the two objects at the time of the event
+         * @return separation (in radians)
+         */
+        public double separation() {
+            return separation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s: %s - %s (%.3f°)", when, type.label(), first, second,
+                    Angle.toDeg(separation));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package ch.epfl.rigel.astronomy;
 
 import ch.epfl.rigel.Preconditions;
 import ch.epfl.rigel.coordinates.EquatorialCoordinates;
+import ch.epfl.rigel.math.ClosedInterval;
 
 import java.util.Objects;
 
@@ -12,6 +13,8 @@ import java.util.Objects;
  * @author Malo Ranzetti (296956)
  */
 public abstract class CelestialObject {
+    private static final ClosedInterval MAGNITUDE_INTERVAL = ClosedInterval.of(-2, 5);
+
     private final String name;
     private final EquatorialCoordinates equatorialPos;
     private final float angularSize;
@@ -72,6 +75,16 @@ public abstract class CelestialObject {
         return magnitude;
     }
 
+    /**
+     * returns the size of the disc representing an object of the given magnitude on a sky map, relative to the size
+     * of a disc of 0.5°: brighter objects are bigger, the magnitude being clipped to [-2, 5]
+     * @param magnitude magnitude of the object
+     * @return relative diameter of the object's disc
+     */
+    public static double diameterFactor(double magnitude) {
+        return (99 - 17 * MAGNITUDE_INTERVAL.clip(magnitude)) / 140;
+    }
+
     /**
      * returns information about celestial object
      * @return information about celestial object
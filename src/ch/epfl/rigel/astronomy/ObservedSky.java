@@ -1,8 +1,10 @@
 package ch.epfl.rigel.astronomy;
 
+import ch.epfl.rigel.Preconditions;
 import ch.epfl.rigel.coordinates.*;
 import javafx.beans.value.ObservableMapValue;
 
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.function.Function;
@@ -15,6 +17,10 @@ import java.util.function.Function;
  */
 public class ObservedSky {
 
+    //Objects moving by more than this distance on the plane between two skies are not interpolated (e.g. when they
+    //pass near the point opposite to the center of the projection, which is sent to infinity)
+    private static final double MAX_INTERPOLATED_DISTANCE = 1;
+
     private final Sun sunAtTime;
     private final CartesianCoordinates sunPosition;
     private final Moon moonAtTime;
@@ -34,6 +40,9 @@ public class ObservedSky {
     private final HashMap<String, HorizontalCoordinates> objectCoord;
 
     private final StarCatalogue catalogue;
+    private final StereographicProjection projection;
+    private final ZonedDateTime when;
+    private final GeographicCoordinates where;
 
     /**
      * Observed sky constructor
@@ -45,6 +54,9 @@ public class ObservedSky {
     public ObservedSky(ZonedDateTime when, GeographicCoordinates where,
                        StereographicProjection projection, StarCatalogue catalogue) {
         this.catalogue = catalogue;
+        this.projection = projection;
+        this.when = when;
+        this.where = where;
         double daysUntil = Epoch.J2010.daysUntil(when);
 
         EclipticToEquatorialConversion eclConv = new EclipticToEquatorialConversion(when);
@@ -95,6 +107,76 @@ public class ObservedSky {
         }
     }
 
+    //Sky with the objects of the given sky at other positions
+    private ObservedSky(ObservedSky objects, ZonedDateTime when, CartesianCoordinates sunPosition,
+                        CartesianCoordinates moonPosition, double[] planetCoordinates, double[] starCoordinates) {
+        this.sunAtTime = objects.sunAtTime;
+        this.moonAtTime = objects.moonAtTime;
+        this.planetsAtTime = objects.planetsAtTime;
+        this.starsAtTime = objects.starsAtTime;
+        this.xMap = objects.xMap;
+        this.yMap = objects.yMap;
+        this.positionMap = objects.positionMap;
+        this.distanceMap = objects.distanceMap;
+        this.objectCoord = objects.objectCoord;
+        this.catalogue = objects.catalogue;
+        this.projection = objects.projection;
+        this.where = objects.where;
+        this.when = when;
+        this.sunPosition = sunPosition;
+        this.moonPosition = moonPosition;
+        this.planetCoordinates = planetCoordinates;
+        this.starCoordinates = starCoordinates;
+    }
+
+    /**
+     * Returns an approximation of the sky observed at a time between the ones of two observed skies, much cheaper to
+     * build than the observed sky itself. The positions of the objects on the plane are interpolated linearly in time,
+     * the objects themselves (and the positions used by objectClosestTo) are those of the closest of the two skies
+     * @param from observed sky before the given time
+     * @param to observed sky after the given time, observed from the same position with the same projection
+     * @param when time of observation, between the ones of the two skies
+     * @return interpolated observed sky
+     * @throws IllegalArgumentException if the skies are not observed from the same position with the same projection
+     * and catalogue, or if the time is not between theirs
+     */
+    public static ObservedSky interpolate(ObservedSky from, ObservedSky to, ZonedDateTime when) {
+        Preconditions.checkArgument(from.where == to.where && from.projection == to.projection
+                && from.catalogue == to.catalogue);
+        Preconditions.checkArgument(!when.isBefore(from.when) && !when.isAfter(to.when));
+        long total = Duration.between(from.when, to.when).toNanos();
+        double t = total == 0 ? 0 : Duration.between(from.when, when).toNanos() / (double) total;
+        ObservedSky closest = t <= 0.5 ? from : to;
+
+        return new ObservedSky(closest, when,
+                interpolate(from.sunPosition, to.sunPosition, t),
+                interpolate(from.moonPosition, to.moonPosition, t),
+                interpolate(from.planetCoordinates, to.planetCoordinates, t),
+                interpolate(from.starCoordinates, to.starCoordinates, t));
+    }
+
+    private static CartesianCoordinates interpolate(CartesianCoordinates from, CartesianCoordinates to, double t) {
+        double[] coordinates = interpolate(new double[]{from.x(), from.y()}, new double[]{to.x(), to.y()}, t);
+        return CartesianCoordinates.of(coordinates[0], coordinates[1]);
+    }
+
+    private static double[] interpolate(double[] from, double[] to, double t) {
+        double[] coordinates = new double[from.length];
+        for (int i = 0; i < coordinates.length; i += 2) {
+            double dx = to[i] - from[i];
+            double dy = to[i + 1] - from[i + 1];
+            if (dx * dx + dy * dy > MAX_INTERPOLATED_DISTANCE * MAX_INTERPOLATED_DISTANCE) {
+                double[] closest = t <= 0.5 ? from : to;
+                coordinates[i] = closest[i];
+                coordinates[i + 1] = closest[i + 1];
+            } else {
+                coordinates[i] = from[i] + t * dx;
+                coordinates[i + 1] = from[i + 1] + t * dy;
+            }
+        }
+        return coordinates;
+    }
+
     /*
     Private methods
      */
@@ -149,6 +231,24 @@ public class ObservedSky {
     Public getters
      */
 
+    /**
+     * returns the projection used to compute the cartesian coordinates of this observed sky
+     * @return the projection used
+     */
+    public StereographicProjection projection(){return projection;}
+
+    /**
+     * returns the time of observation of this observed sky
+     * @return the time of observation
+     */
+    public ZonedDateTime when(){return when;}
+
+    /**
+     * returns the position of the observer of this observed sky
+     * @return the position of observation
+     */
+    public GeographicCoordinates where(){return where;}
+
     /**
      * returns sun at time
      * @return sun at time
@@ -199,6 +299,28 @@ public class ObservedSky {
     public double[] starCoordinates(){
         return Arrays.copyOf(starCoordinates, starCoordinates.length);}
 
+    /**
+     * returns the color temperature of the star at the given index, rounded to the nearest hundred kelvins and given
+     * in hundreds of kelvins
+     * @param index index of the star
+     * @return temperature index of the star
+     */
+    public int starTemperatureIndex(int index){return catalogue.starTemperatureIndex(index);}
+
+    /**
+     * returns the relative diameter of the disc of the star at the given index, see CelestialObject.diameterFactor
+     * @param index index of the star
+     * @return relative diameter of the star's disc
+     */
+    public double starDiameterFactor(int index){return catalogue.starDiameterFactor(index);}
+
+    /**
+     * returns the index of the star of the given rank by magnitude, the brightest star having rank 0
+     * @param rank rank of the star, from the brightest to the faintest
+     * @return index of the star
+     */
+    public int starIndexByMagnitude(int rank){return catalogue.starIndexByMagnitude(rank);}
+
     /**
      * returns a set of all asterisms
      * @return a set of all asterisms
@@ -212,6 +334,19 @@ public class ObservedSky {
      */
     public List<Integer> asterismIndex(Asterism asterism){return catalogue.asterismIndices(asterism);}
 
+    /**
+     * returns the position in asterismStarIndices() of the first star of each asterism, followed by the total number
+     * of indices
+     * @return start of each asterism in the array of asterism star indices
+     */
+    public int[] asterismStarts(){return catalogue.asterismStarts();}
+
+    /**
+     * returns the indices of the stars of all asterisms, one asterism after the other
+     * @return indices of the stars of all asterisms
+     */
+    public int[] asterismStarIndices(){return catalogue.asterismStarIndices();}
+
     /**
      * Getter for a map with all planet' name and horizontal coordinates and those of stars which have a full name
      * @return map with all planet' name and horizontal coordinates and those of stars which have a full name
@@ -0,0 +1,351 @@
+package ch.epfl.rigel.astronomy;
+
+import ch.epfl.rigel.Preconditions;
+import ch.epfl.rigel.coordinates.EclipticToEquatorialConversion;
+import ch.epfl.rigel.coordinates.EquatorialCoordinates;
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.coordinates.PrecessionConversion;
+import ch.epfl.rigel.math.Angle;
+import ch.epfl.rigel.math.RootFinder;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * Occultation search
+ *
+ * Searches the occultations of stars by the Moon seen by an observer. The Moon is seen from the observer rather than
+ * from the center of the Earth: its parallax, up to about twice its apparent diameter, decides whether a star is
+ * occulted at all.
+ *
+ * The path of the Moon is swept in steps of an hour. The stars which may be occulted during a step are those of the
+ * corridor swept by the disc of the Moon, they are found by querying a grid of cells of about one degree over the
+ * positions of the stars, so that a step only costs the few stars close to the path of the Moon. The ingress and the
+ * egress of each occultation are then refined by bisection to the nearest second.
+ *
+ * The Moon is given against the equinox of the date while the stars of the catalogue are given against that of J2000,
+ * so that the stars are precessed to the date before being placed in the grid. The grid is rebuilt for each year of the
+ * search, the equinox drifting by less than an arcminute during a year.
+ *
+ * The times found are only as accurate as the Moon model: an error of a few arcminutes on the position of the Moon
+ * moves the ingress and the egress by several minutes, and more for grazing occultations.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class OccultationSearch {
+
+    //Sampling step of the path of the Moon (in days), during which it moves by about half its diameter
+    private static final double SAMPLING_STEP = 1d / 24;
+    //Radius of the Moon (in radii of the Earth)
+    private static final double MOON_RADIUS = 1737.4 / 6378.14;
+    //Margin of the corridor, covering the curvature of the path of the Moon during a step
+    private static final double CORRIDOR_MARGIN = Angle.ofDeg(0.05);
+    //Span of the search (in days) over which the stars are precessed to a single date
+    private static final double PRECESSION_SPAN = 365.25;
+
+    private final List<Star> stars;
+
+    /**
+     * Constructs a search of the occultations of the given stars
+     * @param stars stars which may be occulted
+     */
+    public OccultationSearch(List<Star> stars) {
+        this.stars = List.copyOf(stars);
+    }
+
+    /**
+     * Searches the occultations beginning between two times, while the Moon is above the horizon of the observer
+     * @param start start of the search
+     * @param end end of the search (excluded)
+     * @param where place of observation
+     * @return occultations found, sorted by time of ingress
+     * @throws IllegalArgumentException if the end is not after the start
+     */
+    public List<Occultation> search(ZonedDateTime start, ZonedDateTime end, GeographicCoordinates where) {
+        Preconditions.checkArgument(end.isAfter(start));
+        double duration = RootFinder.daysBetween(start, end);
+        Path path = new Path(start, where);
+        int steps = (int) Math.ceil(duration / SAMPLING_STEP);
+
+        List<Occultation> occultations = new ArrayList<>();
+        TopocentricMoon moon0 = path.at(0);
+        StarGrid currentGrid = null;
+        int currentSpan = -1;
+        for (int k = 0; k < steps; ++k) {
+            double t0 = k * SAMPLING_STEP, t1 = t0 + SAMPLING_STEP;
+            int span = (int) (t0 / PRECESSION_SPAN);
+            if (span != currentSpan) {
+                //Stars precessed to the middle of the span of the search containing the step
+                double middle = (span * PRECESSION_SPAN + Math.min((span + 1) * PRECESSION_SPAN, duration)) / 2;
+                currentGrid = new StarGrid(stars, new PrecessionConversion(RootFinder.plusDays(start, middle)));
+                currentSpan = span;
+            }
+            StarGrid grid = currentGrid;
+            TopocentricMoon moon1 = path.at(t1);
+            TopocentricMoon from = moon0;
+
+            //Corridor swept by the disc of the Moon: cone around the middle of the step
+            double mx = from.x + moon1.x, my = from.y + moon1.y, mz = from.z + moon1.z;
+            double norm = Math.sqrt(mx * mx + my * my + mz * mz);
+            double radius = from.separation(moon1.x, moon1.y, moon1.z) / 2
+                    + Math.max(from.radius, moon1.radius) + CORRIDOR_MARGIN;
+
+            grid.query(mx / norm, my / norm, mz / norm, radius, s -> {
+                //Stars already behind the Moon at the start of the step were occulted during a previous step
+                double g0 = from.overlap(grid, s);
+                if (g0 <= 0) return;
+                DoubleUnaryOperator overlap = t -> path.at(t).overlap(grid, s);
+                double g1 = moon1.overlap(grid, s);
+                //Time at which the star is behind the Moon
+                double inside;
+                if (g1 <= 0) {
+                    inside = t1;
+                } else {
+                    //Both ends of the step are outside the Moon, the star may still be occulted in between
+                    inside = RootFinder.maximize(t -> -overlap.applyAsDouble(t), t0, t1);
+                    if (overlap.applyAsDouble(inside) > 0) return;
+                }
+                double ingress = RootFinder.bisect(overlap, t0, g0, inside);
+
+                //The egress follows by at most a couple of steps
+                double t = inside;
+                double gInside = overlap.applyAsDouble(t);
+                double next;
+                while ((next = overlap.applyAsDouble(t + SAMPLING_STEP)) <= 0) {
+                    t += SAMPLING_STEP;
+                    gInside = next;
+                }
+                double egress = RootFinder.bisect(overlap, t, gInside, t + SAMPLING_STEP);
+
+                double middle = (ingress + egress) / 2;
+                double altitude = path.at(middle).altitude;
+                if (ingress < duration && altitude > 0) {
+                    occultations.add(new Occultation(stars.get(s), RootFinder.plusDays(start, ingress),
+                            RootFinder.plusDays(start, egress), altitude));
+                }
+            });
+            moon0 = moon1;
+        }
+        occultations.sort(Comparator.comparing(Occultation::ingress));
+        return occultations;
+    }
+
+    //Path of the Moon seen by an observer
+    private static final class Path {
+        private final ZonedDateTime start;
+        private final double startDays;
+        private final GeographicCoordinates where;
+        private final double sinLat, cosLat;
+
+        private Path(ZonedDateTime start, GeographicCoordinates where) {
+            this.start = start;
+            this.startDays = Epoch.J2010.daysUntil(start);
+            this.where = where;
+            this.sinLat = Math.sin(where.lat());
+            this.cosLat = Math.cos(where.lat());
+        }
+
+        private TopocentricMoon at(double t) {
+            ZonedDateTime time = RootFinder.plusDays(start, t);
+            Moon moon = MoonModel.MOON.at(startDays + t, new EclipticToEquatorialConversion(time));
+            EquatorialCoordinates position = moon.equatorialPos();
+            //Distance of the Moon (in radii of the Earth) from its apparent size, seen from the center of the Earth
+            double distance = MOON_RADIUS / Math.sin(moon.angularSize() / 2d);
+
+            //Zenith of the observer, in equatorial coordinates of the date (the Earth being a sphere)
+            double siderealTime = SiderealTime.local(time, where);
+            double ox = cosLat * Math.cos(siderealTime), oy = cosLat * Math.sin(siderealTime), oz = sinLat;
+
+            double x = distance * Math.cos(position.dec()) * Math.cos(position.ra()) - ox;
+            double y = distance * Math.cos(position.dec()) * Math.sin(position.ra()) - oy;
+            double z = distance * Math.sin(position.dec()) - oz;
+            double topocentricDistance = Math.sqrt(x * x + y * y + z * z);
+            x /= topocentricDistance;
+            y /= topocentricDistance;
+            z /= topocentricDistance;
+            double altitude = Math.asin(x * ox + y * oy + z * oz);
+            return new TopocentricMoon(x, y, z, Math.asin(MOON_RADIUS / topocentricDistance), altitude);
+        }
+    }
+
+    //Direction, apparent radius and altitude of the Moon seen by an observer
+    private static final class TopocentricMoon {
+        private final double x, y, z;
+        private final double radius;
+        private final double altitude;
+
+        private TopocentricMoon(double x, double y, double z, double radius, double altitude) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.radius = radius;
+            this.altitude = altitude;
+        }
+
+        private double separation(double ux, double uy, double uz) {
+            //Angle from the norm of the difference of the unit vectors, accurate for small separations
+            double dx = x - ux, dy = y - uy, dz = z - uz;
+            return 2 * Math.asin(Math.min(1, Math.sqrt(dx * dx + dy * dy + dz * dz) / 2));
+        }
+
+        //Separation between a star and the limb of the Moon, negative when the star is behind the Moon
+        private double overlap(StarGrid grid, int star) {
+            return separation(grid.x[star], grid.y[star], grid.z[star]) - radius;
+        }
+    }
+
+    //Grid of cells of about one degree over the positions of the stars: bands of declination split in cells of right
+    //ascension, narrower towards the poles. The stars of each cell are stored contiguously
+    private static final class StarGrid {
+        private static final int BANDS = 180;
+        private static final double BAND_HEIGHT = Math.PI / BANDS;
+
+        //Unit vectors of the stars, in equatorial coordinates of the date
+        private final double[] x, y, z;
+        //Number of cells of each band, and index of the first cell of each band
+        private final int[] cellsInBand = new int[BANDS];
+        private final int[] firstCell = new int[BANDS + 1];
+        //Stars of the cell c are starsInCells[cellStart[c]] to starsInCells[cellStart[c + 1]] (excluded)
+        private final int[] cellStart;
+        private final int[] starsInCells;
+
+        private StarGrid(List<Star> stars, PrecessionConversion precession) {
+            int count = stars.size();
+            x = new double[count];
+            y = new double[count];
+            z = new double[count];
+            for (int b = 0; b < BANDS; ++b) {
+                //Cells at least one degree wide at the edge of the band closest to the pole
+                double edge = Math.max(Math.abs(b * BAND_HEIGHT - Math.PI / 2), Math.abs((b + 1) * BAND_HEIGHT - Math.PI / 2));
+                cellsInBand[b] = Math.max(1, (int) (BANDS * 2 * Math.cos(edge)));
+                firstCell[b + 1] = firstCell[b] + cellsInBand[b];
+            }
+
+            int[] cellOfStar = new int[count];
+            cellStart = new int[firstCell[BANDS] + 1];
+            for (int s = 0; s < count; ++s) {
+                EquatorialCoordinates position = precession.apply(stars.get(s).equatorialPos());
+                x[s] = Math.cos(position.dec()) * Math.cos(position.ra());
+                y[s] = Math.cos(position.dec()) * Math.sin(position.ra());
+                z[s] = Math.sin(position.dec());
+                cellOfStar[s] = cell(position.ra(), position.dec());
+                ++cellStart[cellOfStar[s] + 1];
+            }
+            for (int c = 0; c < firstCell[BANDS]; ++c) {
+                cellStart[c + 1] += cellStart[c];
+            }
+            starsInCells = new int[count];
+            int[] filled = Arrays.copyOf(cellStart, cellStart.length - 1);
+            for (int s = 0; s < count; ++s) {
+                starsInCells[filled[cellOfStar[s]]++] = s;
+            }
+        }
+
+        private int band(double dec) {
+            return Math.max(0, Math.min(BANDS - 1, (int) ((dec + Math.PI / 2) / BAND_HEIGHT)));
+        }
+
+        private int cell(double ra, double dec) {
+            int b = band(dec);
+            int column = (int) (Angle.normalizePositive(ra) / Angle.TAU * cellsInBand[b]);
+            return firstCell[b] + Math.min(column, cellsInBand[b] - 1);
+        }
+
+        //Gives the indexes of the stars within the given radius of the unit vector (ux, uy, uz) to the consumer
+        private void query(double ux, double uy, double uz, double radius, IntConsumer consumer) {
+            double ra = Math.atan2(uy, ux);
+            double dec = Math.asin(Math.max(-1, Math.min(1, uz)));
+            double minCos = Math.cos(radius);
+            boolean pole = dec + radius >= Math.PI / 2 || dec - radius <= -Math.PI / 2;
+            //Half width in right ascension of the cone (the whole band if the cone contains a pole)
+            double halfWidth = pole || Math.sin(radius) >= Math.cos(dec)
+                    ? Math.PI
+                    : Math.asin(Math.sin(radius) / Math.cos(dec));
+
+            for (int b = band(dec - radius); b <= band(dec + radius); ++b) {
+                int cells = cellsInBand[b];
+                int column0, column1;
+                if (halfWidth >= Math.PI) {
+                    column0 = 0;
+                    column1 = cells - 1;
+                } else {
+                    column0 = (int) Math.floor((ra - halfWidth) / Angle.TAU * cells);
+                    column1 = (int) Math.floor((ra + halfWidth) / Angle.TAU * cells);
+                    if (column1 - column0 >= cells) {
+                        column0 = 0;
+                        column1 = cells - 1;
+                    }
+                }
+                for (int column = column0; column <= column1; ++column) {
+                    int c = firstCell[b] + Math.floorMod(column, cells);
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; ++i) {
+                        int s = starsInCells[i];
+                        if (x[s] * ux + y[s] * uy + z[s] * uz >= minCos) consumer.accept(s);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Occultation of a star by the Moon
+     */
+    public static final class Occultation {
+        private final Star star;
+        private final ZonedDateTime ingress;
+        private final ZonedDateTime egress;
+        private final double altitude;
+
+        private Occultation(Star star, ZonedDateTime ingress, ZonedDateTime egress, double altitude) {
+            this.star = star;
+            this.ingress = ingress;
+            this.egress = egress;
+            this.altitude = altitude;
+        }
+
+        /**
+         * Returns the occulted star
+         * @return occulted star
+         */
+        public Star star() {
+            return star;
+        }
+
+        /**
+         * Returns the time at which the star disappears behind the Moon
+         * @return time of ingress
+         */
+        public ZonedDateTime ingress() {
+            return ingress;
+        }
+
+        /**
+         * Returns the time at which the star reappears from behind the Moon
+         * @return time of egress
+         */
+        public ZonedDateTime egress() {
+            return egress;
+        }
+
+        /**
+         * Returns the altitude of the Moon in the middle of the occultation
+         * @return altitude of the Moon (in radians)
+         */
+        public double altitude() {
+            return altitude;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %s - %s (altitude %.1f°)", star.name(), ingress, egress,
+                    Angle.toDeg(altitude));
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package ch.epfl.rigel.astronomy;
+
+import ch.epfl.rigel.coordinates.EclipticToEquatorialConversion;
+import ch.epfl.rigel.coordinates.EquatorialCoordinates;
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.math.Angle;
+import ch.epfl.rigel.math.RootFinder;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Rise, transit and set times
+ *
+ * Computes the times at which celestial objects rise, cross the meridian (transit) and set, seen from a given place,
+ * during the day following a given time. An object rises or sets when the altitude of its center crosses a standard
+ * altitude below or above the horizon, accounting for the refraction, the size of the Sun and the parallax of the Moon.
+ *
+ * Stars do not move on the celestial sphere, so their times are computed analytically from their declination, the
+ * latitude and the sidereal time, in a single pass over the arrays of their coordinates. The Sun, the Moon and the
+ * planets move, their events are bracketed by sampling their models and then refined by bisection.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class RiseTransitSet {
+
+    /**
+     * Standard altitude of stars and planets at rise and set: refraction at the horizon (in radians)
+     */
+    public static final double STAR_ALTITUDE = Angle.ofDeg(-0.5667);
+    /**
+     * Standard altitude of the Sun at rise and set: refraction and apparent radius (in radians)
+     */
+    public static final double SUN_ALTITUDE = Angle.ofDeg(-0.8333);
+    /**
+     * Standard altitude of the Moon at rise and set: refraction, apparent radius and parallax (in radians)
+     */
+    public static final double MOON_ALTITUDE = Angle.ofDeg(0.125);
+
+    //Sampling step of the moving objects (in days), shorter than any time an object spends above or below the horizon
+    private static final double SAMPLING_STEP = 1d / 48;
+
+    private RiseTransitSet() {}
+
+    /**
+     * Computes the rise, transit and set times of stars, during the day following the given time
+     * @param stars stars
+     * @param start start of the day
+     * @param where place of observation
+     * @return rise, transit and set times of each star, in the order of the list
+     */
+    public static Events ofStars(List<Star> stars, ZonedDateTime start, GeographicCoordinates where) {
+        int count = stars.size();
+        double[] ra = new double[count];
+        double[] dec = new double[count];
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            EquatorialCoordinates position = stars.get(i).equatorialPos();
+            ra[i] = position.ra();
+            dec[i] = position.dec();
+            names.add(stars.get(i).name());
+        }
+
+        Events events = new Events(names, start);
+        double siderealTime = SiderealTime.local(start, where);
+        double sinLat = Math.sin(where.lat());
+        double cosLat = Math.cos(where.lat());
+        double sinAltitude = Math.sin(STAR_ALTITUDE);
+        for (int i = 0; i < count; ++i) {
+            //The star transits when the local sidereal time reaches its right ascension
+            events.transit[i] = Angle.normalizePositive(ra[i] - siderealTime) / SiderealTime.RATE_PER_DAY;
+
+            //Hour angle at which the star is at the standard altitude
+            double cosHourAngle = (sinAltitude - sinLat * Math.sin(dec[i])) / (cosLat * Math.cos(dec[i]));
+            if (cosHourAngle > 1) {
+                events.state[i] = Events.NEVER_RISES;
+            } else if (cosHourAngle < -1) {
+                events.state[i] = Events.CIRCUMPOLAR;
+            } else {
+                double hourAngle = Math.acos(cosHourAngle);
+                events.rise[i] = Angle.normalizePositive(ra[i] - hourAngle - siderealTime) / SiderealTime.RATE_PER_DAY;
+                events.set[i] = Angle.normalizePositive(ra[i] + hourAngle - siderealTime) / SiderealTime.RATE_PER_DAY;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Computes the rise, transit and set times of the Sun, the Moon and the planets (in this order, the Earth
+     * excepted), during the day following the given time
+     * @param start start of the day
+     * @param where place of observation
+     * @return rise, transit and set times of each object
+     */
+    public static Events ofSolarSystem(ZonedDateTime start, GeographicCoordinates where) {
+        List<CelestialObjectModel<? extends CelestialObject>> models = new ArrayList<>();
+        List<Double> altitudes = new ArrayList<>();
+        models.add(SunModel.SUN);
+        altitudes.add(SUN_ALTITUDE);
+        models.add(MoonModel.MOON);
+        altitudes.add(MOON_ALTITUDE);
+        for (PlanetModel planet : PlanetModel.ALL) {
+            if (planet == PlanetModel.EARTH) continue;
+            models.add(planet);
+            altitudes.add(STAR_ALTITUDE);
+        }
+        return ofModels(models, altitudes, start, where);
+    }
+
+    /**
+     * Computes the rise, transit and set times of moving objects, during the day following the given time
+     * @param models models of the objects
+     * @param standardAltitudes altitude of each object at rise and set (in radians)
+     * @param start start of the day
+     * @param where place of observation
+     * @return rise, transit and set times of each object, in the order of the list
+     * @throws IllegalArgumentException if there is not one altitude per model
+     */
+    public static Events ofModels(List<CelestialObjectModel<? extends CelestialObject>> models,
+                                  List<Double> standardAltitudes, ZonedDateTime start, GeographicCoordinates where) {
+        if (models.size() != standardAltitudes.size())
+            throw new IllegalArgumentException("One standard altitude per model is required");
+        double startDays = Epoch.J2010.daysUntil(start);
+        int samples = (int) Math.ceil(1 / SAMPLING_STEP);
+
+        //Sidereal time and obliquity of the ecliptic are shared by all objects
+        double[] siderealTimes = new double[samples + 1];
+        EclipticToEquatorialConversion[] conversions = new EclipticToEquatorialConversion[samples + 1];
+        for (int k = 0; k <= samples; ++k) {
+            ZonedDateTime time = RootFinder.plusDays(start, k * SAMPLING_STEP);
+            siderealTimes[k] = SiderealTime.local(time, where);
+            conversions[k] = new EclipticToEquatorialConversion(time);
+        }
+
+        List<String> names = new ArrayList<>(models.size());
+        for (CelestialObjectModel<? extends CelestialObject> model : models) {
+            names.add(model.at(startDays, conversions[0]).name());
+        }
+        Events events = new Events(names, start);
+        double sinLat = Math.sin(where.lat());
+        double cosLat = Math.cos(where.lat());
+
+        for (int i = 0; i < models.size(); ++i) {
+            CelestialObjectModel<? extends CelestialObject> model = models.get(i);
+            double standardAltitude = standardAltitudes.get(i);
+            //Altitude above the standard altitude, and hour angle in [-π, π]
+            DoubleUnaryOperator altitude = t -> {
+                EquatorialCoordinates position = positionAt(model, start, startDays, t);
+                return altitude(position, SiderealTime.local(RootFinder.plusDays(start, t), where), sinLat, cosLat)
+                        - standardAltitude;
+            };
+            DoubleUnaryOperator hourAngle = t -> {
+                EquatorialCoordinates position = positionAt(model, start, startDays, t);
+                return hourAngle(position, SiderealTime.local(RootFinder.plusDays(start, t), where));
+            };
+
+            double[] altitudes = new double[samples + 1];
+            double[] hourAngles = new double[samples + 1];
+            for (int k = 0; k <= samples; ++k) {
+                EquatorialCoordinates position = model.at(startDays + k * SAMPLING_STEP, conversions[k]).equatorialPos();
+                altitudes[k] = altitude(position, siderealTimes[k], sinLat, cosLat) - standardAltitude;
+                hourAngles[k] = hourAngle(position, siderealTimes[k]);
+            }
+
+            boolean above = false, below = false;
+            for (int k = 0; k < samples; ++k) {
+                double t0 = k * SAMPLING_STEP, t1 = (k + 1) * SAMPLING_STEP;
+                above |= altitudes[k] > 0;
+                below |= altitudes[k] <= 0;
+                if (Double.isNaN(events.rise[i]) && altitudes[k] <= 0 && altitudes[k + 1] > 0)
+                    events.rise[i] = RootFinder.bisect(altitude, t0, altitudes[k], t1);
+                if (Double.isNaN(events.set[i]) && altitudes[k] > 0 && altitudes[k + 1] <= 0)
+                    events.set[i] = RootFinder.bisect(altitude, t0, altitudes[k], t1);
+                //The hour angle goes through 0 at the transit, and jumps from π to -π half a day later
+                if (Double.isNaN(events.transit[i]) && hourAngles[k] <= 0 && hourAngles[k + 1] > 0
+                        && hourAngles[k + 1] - hourAngles[k] < Math.PI)
+                    events.transit[i] = RootFinder.bisect(hourAngle, t0, hourAngles[k], t1);
+            }
+            if (Double.isNaN(events.rise[i]) && Double.isNaN(events.set[i])) {
+                events.state[i] = above && !below ? Events.CIRCUMPOLAR : Events.NEVER_RISES;
+            }
+        }
+        return events;
+    }
+
+    private static EquatorialCoordinates positionAt(CelestialObjectModel<? extends CelestialObject> model,
+                                                    ZonedDateTime start, double startDays, double t) {
+        ZonedDateTime time = RootFinder.plusDays(start, t);
+        return model.at(startDays + t, new EclipticToEquatorialConversion(time)).equatorialPos();
+    }
+
+    private static double altitude(EquatorialCoordinates position, double siderealTime, double sinLat, double cosLat) {
+        return Math.asin(Math.sin(position.dec()) * sinLat
+                + Math.cos(position.dec()) * cosLat * Math.cos(siderealTime - position.ra()));
+    }
+
+    private static double hourAngle(EquatorialCoordinates position, double siderealTime) {
+        return Math.IEEEremainder(siderealTime - position.ra(), Angle.TAU);
+    }
+
+    /**
+     * Rise, transit and set times of a list of objects, during the day following a start time
+     */
+    public static final class Events {
+        private static final byte RISES_AND_SETS = 0;
+        private static final byte CIRCUMPOLAR = 1;
+        private static final byte NEVER_RISES = 2;
+
+        private final List<String> names;
+        private final ZonedDateTime start;
+        //Times since the start (in days), NaN if there is no such event during the day
+        private final double[] rise;
+        private final double[] transit;
+        private final double[] set;
+        private final byte[] state;
+
+        private Events(List<String> names, ZonedDateTime start) {
+            this.names = List.copyOf(names);
+            this.start = start;
+            this.rise = new double[names.size()];
+            this.transit = new double[names.size()];
+            this.set = new double[names.size()];
+            this.state = new byte[names.size()];
+            Arrays.fill(rise, Double.NaN);
+            Arrays.fill(transit, Double.NaN);
+            Arrays.fill(set, Double.NaN);
+            Arrays.fill(state, RISES_AND_SETS);
+        }
+
+        /**
+         * Returns the number of objects
+         * @return number of objects
+         */
+        public int size() {
+            return names.size();
+        }
+
+        /**
+         * Returns the name of an object
+         * @param index index of the object
+         * @return name of the object
+         */
+        public String name(int index) {
+            return names.get(index);
+        }
+
+        /**
+         * Returns the first time an object rises during the day
+         * @param index index of the object
+         * @return rise time, empty if the object does not rise during the day
+         */
+        public Optional<ZonedDateTime> rise(int index) {
+            return timeOf(rise[index]);
+        }
+
+        /**
+         * Returns the first time an object crosses the meridian (upper culmination) during the day
+         * @param index index of the object
+         * @return transit time, empty if the object does not transit during the day
+         */
+        public Optional<ZonedDateTime> transit(int index) {
+            return timeOf(transit[index]);
+        }
+
+        /**
+         * Returns the first time an object sets during the day
+         * @param index index of the object
+         * @return set time, empty if the object does not set during the day
+         */
+        public Optional<ZonedDateTime> set(int index) {
+            return timeOf(set[index]);
+        }
+
+        /**
+         * Checks if an object stays above the horizon during the whole day
+         * @param index index of the object
+         * @return true if the object is circumpolar
+         */
+        public boolean isCircumpolar(int index) {
+            return state[index] == CIRCUMPOLAR;
+        }
+
+        /**
+         * Checks if an object stays below the horizon during the whole day
+         * @param index index of the object
+         * @return true if the object never rises
+         */
+        public boolean neverRises(int index) {
+            return state[index] == NEVER_RISES;
+        }
+
+        private Optional<ZonedDateTime> timeOf(double days) {
+            return Double.isNaN(days) ? Optional.empty() : Optional.of(RootFinder.plusDays(start, days));
+        }
+    }
+}
@@ -19,6 +19,19 @@ import java.time.temporal.TemporalUnit;
  * @author Malo Ranzetti (296956)
  */
 public final class SiderealTime {
+    /**
+     * Number of sidereal days in a mean solar day
+     */
+    public static final double SIDEREAL_DAYS_PER_DAY = 1.002737909;
+    /**
+     * Rotation rate of the sky relative to the stars (in radians per day)
+     */
+    public static final double RATE_PER_DAY = Angle.TAU * SIDEREAL_DAYS_PER_DAY;
+    /**
+     * Rotation rate of the sky relative to the stars (in radians per second)
+     */
+    public static final double RATE_PER_SECOND = RATE_PER_DAY / 86400;
+
     private static final Polynomial SIDEREAL_TIME_0 = Polynomial.of(0.000025862,2400.051336, 6.697374558);
 
     private SiderealTime() {}
@@ -38,7 +51,7 @@ public final class SiderealTime {
         double julianCenturiesDifference = Epoch.J2000.julianCenturiesUntil(truncatedDate);
 
         double hoursSinceBeginningOfDay = correctedOffset.getLong(ChronoField.NANO_OF_DAY) / NANO_PER_HOUR;
-        double siderealTimeGreenwichHr =  SIDEREAL_TIME_0.at(julianCenturiesDifference) + 1.002737909 * hoursSinceBeginningOfDay;
+        double siderealTimeGreenwichHr =  SIDEREAL_TIME_0.at(julianCenturiesDifference) + SIDEREAL_DAYS_PER_DAY * hoursSinceBeginningOfDay;
         return Angle.normalizePositive(Angle.ofHr(siderealTimeGreenwichHr));
     }
 
@@ -20,6 +20,16 @@ public final class StarCatalogue {
     // value->List of integer that represent the indices of the stars composing them.
     private final Map<Asterism, List<Integer>> asterismMap;
     private final Map<Star, Integer> starId;
+    //Color temperature of each star, rounded to the nearest hundred kelvins and given in hundreds of kelvins
+    private final int[] temperatureIndices;
+    //Relative diameter of the disc of each star, see CelestialObject.diameterFactor
+    private final double[] diameterFactors;
+    //Indices of the stars of all asterisms one after the other, those of asterism a go from
+    //asterismStarts[a] (included) to asterismStarts[a + 1] (excluded)
+    private final int[] asterismStarts;
+    private final int[] asterismStarIndices;
+    //Indices of the stars, from the brightest to the faintest
+    private final int[] starsByMagnitude;
 
 
     /**
@@ -45,6 +55,31 @@ public final class StarCatalogue {
         }
         this.stars = List.copyOf(stars);
         asterismMap = Map.copyOf(map);
+
+        temperatureIndices = new int[stars.size()];
+        diameterFactors = new double[stars.size()];
+        for (int i = 0; i < stars.size(); i++) {
+            temperatureIndices[i] = Math.round(stars.get(i).colorTemperature() / 100f);
+            diameterFactors[i] = CelestialObject.diameterFactor(stars.get(i).magnitude());
+        }
+
+        asterismStarts = new int[asterismMap.size() + 1];
+        int indexCount = 0;
+        for (List<Integer> indices : asterismMap.values()) indexCount += indices.size();
+        asterismStarIndices = new int[indexCount];
+        int a = 0;
+        int position = 0;
+        for (List<Integer> indices : asterismMap.values()) {
+            asterismStarts[a++] = position;
+            for (int index : indices) asterismStarIndices[position++] = index;
+        }
+        asterismStarts[a] = position;
+
+        Integer[] byMagnitude = new Integer[stars.size()];
+        for (int i = 0; i < byMagnitude.length; i++) byMagnitude[i] = i;
+        Arrays.sort(byMagnitude, Comparator.comparingDouble(i -> stars.get(i).magnitude()));
+        starsByMagnitude = new int[byMagnitude.length];
+        for (int i = 0; i < byMagnitude.length; i++) starsByMagnitude[i] = byMagnitude[i];
     }
 
     /**
@@ -55,6 +90,54 @@ public final class StarCatalogue {
         return stars;
     }
 
+    /**
+     * Returns the color temperature of the star at the given index, rounded to the nearest hundred kelvins and given
+     * in hundreds of kelvins (precomputed when the catalogue is built)
+     * @param index index of the star in the catalogue
+     * @return temperature index of the star
+     */
+    public int starTemperatureIndex(int index) {
+        return temperatureIndices[index];
+    }
+
+    /**
+     * Returns the relative diameter of the disc of the star at the given index (precomputed when the catalogue is
+     * built), see CelestialObject.diameterFactor
+     * @param index index of the star in the catalogue
+     * @return relative diameter of the star's disc
+     */
+    public double starDiameterFactor(int index) {
+        return diameterFactors[index];
+    }
+
+    /**
+     * Returns the index of the star of the given rank by magnitude, the brightest star having rank 0 (precomputed when
+     * the catalogue is built)
+     * @param rank rank of the star, from the brightest to the faintest
+     * @return index of the star in the catalogue
+     */
+    public int starIndexByMagnitude(int rank) {
+        return starsByMagnitude[rank];
+    }
+
+    /**
+     * Returns the position in asterismStarIndices() of the first star of each asterism, followed by the total number
+     * of indices (precomputed when the catalogue is built)
+     * @return start of each asterism in the array of asterism star indices
+     */
+    public int[] asterismStarts() {
+        return Arrays.copyOf(asterismStarts, asterismStarts.length);
+    }
+
+    /**
+     * Returns the indices in the catalogue of the stars of all asterisms, one asterism after the other
+     * (precomputed when the catalogue is built)
+     * @return indices of the stars of all asterisms
+     */
+    public int[] asterismStarIndices() {
+        return Arrays.copyOf(asterismStarIndices, asterismStarIndices.length);
+    }
+
     /**
      * returns set of asterisms of the catalogue
      * @return set of asterisms of the catalogue
@@ -56,6 +56,23 @@ public final class EclipticToEquatorialConversion implements Function<EclipticCo
         return EquatorialCoordinates.of(Angle.normalizePositive(ra),dec);
     }
 
+    /**
+     * Returns the ecliptic coordinates of the point of equatorial coordinates equ
+     * @param equ
+     *          equatorial coordinates to convert
+     * @return ecliptic coordinates of the point
+     */
+    public EclipticCoordinates inverseApply(EquatorialCoordinates equ) {
+        final double sinRa = Math.sin(equ.ra());
+        final double cosRa = Math.cos(equ.ra());
+        final double sinDec = Math.sin(equ.dec());
+        final double cosDec = Math.cos(equ.dec());
+
+        final double lon = Math.atan2(sinRa * cosDec * cosObliquity + sinDec * sinObliquity, cosRa * cosDec);
+        final double lat = Math.asin(sinDec * cosObliquity - cosDec * sinObliquity * sinRa);
+        return EclipticCoordinates.of(Angle.normalizePositive(lon), lat);
+    }
+
     @Override
     public final int hashCode() {
         throw new UnsupportedOperationException();
@@ -0,0 +1,70 @@
+package ch.epfl.rigel.coordinates;
+
+import ch.epfl.rigel.astronomy.Epoch;
+import ch.epfl.rigel.math.Angle;
+import ch.epfl.rigel.math.Polynomial;
+
+import java.time.ZonedDateTime;
+import java.util.function.Function;
+
+/**
+ * Precession conversion
+ *
+ * Converts equatorial coordinates referred to the mean equator and equinox of J2000, those of the star catalogue, to
+ * the mean equator and equinox of a date, those of the Sun, the Moon and the planets. The equinox drifts by about 50"
+ * per year along the ecliptic, so that stars compared with the models must be precessed to the date first.
+ * The precession angles are those of the IAU 1976 (Lieske) model.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class PrecessionConversion implements Function<EquatorialCoordinates, EquatorialCoordinates> {
+
+    //Precession angles (in arcseconds) as polynomials of the number of Julian centuries since J2000
+    private static final Polynomial ZETA = Polynomial.of(0.017998, 0.30188, 2306.2181, 0);
+    private static final Polynomial Z = Polynomial.of(0.018203, 1.09468, 2306.2181, 0);
+    private static final Polynomial THETA = Polynomial.of(-0.041833, -0.42665, 2004.3109, 0);
+
+    private final double zeta;
+    private final double z;
+    private final double sinTheta;
+    private final double cosTheta;
+
+    /**
+     * Constructs a change of coordinate system between the equatorial coordinates of J2000
+     * and the equatorial coordinates of the date when
+     * @param when
+     *          date/time to precess to
+     */
+    public PrecessionConversion(ZonedDateTime when) {
+        double centuries = Epoch.J2000.julianCenturiesUntil(when);
+        this.zeta = Angle.ofArcsec(ZETA.at(centuries));
+        this.z = Angle.ofArcsec(Z.at(centuries));
+        double theta = Angle.ofArcsec(THETA.at(centuries));
+        this.sinTheta = Math.sin(theta);
+        this.cosTheta = Math.cos(theta);
+    }
+
+    @Override
+    public EquatorialCoordinates apply(EquatorialCoordinates equ) {
+        final double sinDec = Math.sin(equ.dec());
+        final double cosDec = Math.cos(equ.dec());
+        final double shiftedRa = equ.ra() + zeta;
+
+        final double a = cosDec * Math.sin(shiftedRa);
+        final double b = cosTheta * cosDec * Math.cos(shiftedRa) - sinTheta * sinDec;
+        final double c = sinTheta * cosDec * Math.cos(shiftedRa) + cosTheta * sinDec;
+        return EquatorialCoordinates.of(Angle.normalizePositive(Math.atan2(a, b) + z),
+                Math.asin(Math.max(-1, Math.min(1, c))));
+    }
+
+    @Override
+    public final int hashCode() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,136 @@
+package ch.epfl.rigel.gui;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Asterism renderer
+ *
+ * Draws asterisms as polylines straight from the array of transformed star coordinates. Asterisms whose bounding box
+ * is off screen are skipped, the segments of the others are clipped to the canvas with the Cohen-Sutherland algorithm
+ * and all visible segments are stroked as a single path.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class AsterismRenderer {
+
+    //Cohen-Sutherland outcodes
+    private static final int INSIDE = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int BOTTOM = 4;
+    private static final int TOP = 8;
+
+    private double width;
+    private double height;
+
+    //End points of the last clipped segment
+    private double x0, y0, x1, y1;
+
+    /**
+     * Strokes the asterisms with the current stroke of the graphics context
+     * @param gc graphics context to draw on
+     * @param starts index in indices of the first star of each asterism, followed by the total number of indices
+     * @param indices indices of the stars of all asterisms, one asterism after the other
+     * @param points coordinates of the stars on the canvas (x and y of the first star, then of the second...)
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @return number of asterisms drawn, the others being off screen
+     */
+    public int draw(GraphicsContext gc, int[] starts, int[] indices, double[] points, double width, double height) {
+        this.width = width;
+        this.height = height;
+        int drawn = 0;
+        gc.beginPath();
+        for (int a = 0; a + 1 < starts.length; ++a) {
+            int from = starts[a];
+            int to = starts[a + 1];
+            if (!boundingBoxVisible(indices, points, from, to)) continue;
+            ++drawn;
+
+            //Consecutive visible segments sharing an end point are drawn as one polyline
+            boolean connected = false;
+            double lastX = 0, lastY = 0;
+            for (int i = from; i + 1 < to; ++i) {
+                int s = indices[i];
+                int t = indices[i + 1];
+                if (!clip(points[2 * s], points[2 * s + 1], points[2 * t], points[2 * t + 1])) {
+                    connected = false;
+                    continue;
+                }
+                if (!connected || x0 != lastX || y0 != lastY) gc.moveTo(x0, y0);
+                gc.lineTo(x1, y1);
+                connected = true;
+                lastX = x1;
+                lastY = y1;
+            }
+        }
+        gc.stroke();
+        return drawn;
+    }
+
+    private boolean boundingBoxVisible(int[] indices, double[] points, int from, int to) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; ++i) {
+            double x = points[2 * indices[i]];
+            double y = points[2 * indices[i] + 1];
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        return maxX >= 0 && minX <= width && maxY >= 0 && minY <= height;
+    }
+
+    private int outcode(double x, double y) {
+        int code = INSIDE;
+        if (x < 0) code |= LEFT;
+        else if (x > width) code |= RIGHT;
+        if (y < 0) code |= TOP;
+        else if (y > height) code |= BOTTOM;
+        return code;
+    }
+
+    //Clips the segment to the canvas, returns false if it is entirely outside, else stores the clipped end points
+    private boolean clip(double ax, double ay, double bx, double by) {
+        int codeA = outcode(ax, ay);
+        int codeB = outcode(bx, by);
+        while (true) {
+            if ((codeA | codeB) == INSIDE) {
+                x0 = ax;
+                y0 = ay;
+                x1 = bx;
+                y1 = by;
+                return true;
+            }
+            if ((codeA & codeB) != INSIDE) return false;
+
+            //Move the end point outside of the canvas to the edge it crosses
+            int code = codeA != INSIDE ? codeA : codeB;
+            double x, y;
+            if ((code & BOTTOM) != 0) {
+                x = ax + (bx - ax) * (height - ay) / (by - ay);
+                y = height;
+            } else if ((code & TOP) != 0) {
+                x = ax + (bx - ax) * (0 - ay) / (by - ay);
+                y = 0;
+            } else if ((code & RIGHT) != 0) {
+                y = ay + (by - ay) * (width - ax) / (bx - ax);
+                x = width;
+            } else {
+                y = ay + (by - ay) * (0 - ax) / (bx - ax);
+                x = 0;
+            }
+            if (code == codeA) {
+                ax = x;
+                ay = y;
+                codeA = outcode(ax, ay);
+            } else {
+                bx = x;
+                by = y;
+                codeB = outcode(bx, by);
+            }
+        }
+    }
+}
@@ -9,8 +9,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 
 /**
  * Black Body Color
@@ -21,21 +22,25 @@ import java.util.HashMap;
 public class BlackBodyColor {
 
     private static final String DATA_FILE = "/bbr_color.txt";
+    private static final int TEMPERATURE_STEP = 100;
     private static Interval temperatureDomain;
 
     /*
-    KEY: Temperature
-    Image: The corresponding color
+    INDEX: Temperature / TEMPERATURE_STEP
+    Value: The corresponding color (null below the lowest temperature of the data file)
      */
-    private static HashMap<Integer, Color> COLOR_MAP = loadMap();
+    private static final Color[] COLORS = loadColors();
+    //Same colors packed in ARGB format, for the pixel buffer rasterizers
+    private static final int[] ARGB_COLORS = toArgb(COLORS);
 
     //Prevent instantiation
     private BlackBodyColor() {
     }
 
-    private static HashMap<Integer, Color> loadMap() {
+    private static Color[] loadColors() {
 
-        HashMap<Integer, Color> mapToReturn = new HashMap<>();
+        List<Integer> temperatures = new ArrayList<>();
+        List<Color> colors = new ArrayList<>();
 
         try(BufferedReader reader = new BufferedReader(
                 new InputStreamReader(BlackBodyColor.class.getResourceAsStream(DATA_FILE), StandardCharsets.US_ASCII))) {
@@ -46,19 +51,34 @@ public class BlackBodyColor {
                 //Ignore irrelevant lines
                 if(lineContent.charAt(0) == '#' || lineContent.substring(10, 15).equals(" 2deg")) continue;
 
-                Integer kelvin = parseInt(lineContent.substring(1,6));
-                Color color = Color.web(lineContent.substring(80,87));
-                mapToReturn.put(kelvin, color);
+                temperatures.add(parseInt(lineContent.substring(1,6)));
+                colors.add(Color.web(lineContent.substring(80,87)));
             }
 
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
 
-        temperatureDomain = ClosedInterval.of(Collections.min(mapToReturn.keySet()),Collections.max(mapToReturn.keySet()));
-        return mapToReturn;
+        temperatureDomain = ClosedInterval.of(Collections.min(temperatures),Collections.max(temperatures));
+        Color[] colorsToReturn = new Color[Collections.max(temperatures) / TEMPERATURE_STEP + 1];
+        for (int i = 0; i < temperatures.size(); ++i) {
+            colorsToReturn[temperatures.get(i) / TEMPERATURE_STEP] = colors.get(i);
+        }
+        return colorsToReturn;
     }
     
+    private static int[] toArgb(Color[] colors) {
+        int[] argb = new int[colors.length];
+        for (int i = 0; i < colors.length; ++i) {
+            if (colors[i] == null) continue;
+            argb[i] = 0xFF000000
+                    | (int) Math.round(colors[i].getRed() * 255) << 16
+                    | (int) Math.round(colors[i].getGreen() * 255) << 8
+                    | (int) Math.round(colors[i].getBlue() * 255);
+        }
+        return argb;
+    }
+
     private static int parseInt(String str){
         String parsing = str;
         while(parsing.charAt(0) == ' '){
@@ -74,8 +94,25 @@ public class BlackBodyColor {
      */
     public static Color colorForTemperature(int temperature){
         Preconditions.checkInInterval(temperatureDomain, temperature);
-        int temperatureApproximation = Math.round((float) temperature / 100 ) * 100;
-        return COLOR_MAP.get(temperatureApproximation);
+        return COLORS[Math.round((float) temperature / TEMPERATURE_STEP)];
+    }
+
+    /**
+     * Returns color corresponding to the given temperature index, without any check
+     * @param temperatureIndex temperature rounded to the nearest hundred kelvins, in hundreds of kelvins
+     * @return color corresponding to the given temperature index
+     */
+    public static Color colorForTemperatureIndex(int temperatureIndex){
+        return COLORS[temperatureIndex];
+    }
+
+    /**
+     * Returns color corresponding to the given temperature index in ARGB format, without any check
+     * @param temperatureIndex temperature rounded to the nearest hundred kelvins, in hundreds of kelvins
+     * @return ARGB color corresponding to the given temperature index
+     */
+    public static int argbForTemperatureIndex(int temperatureIndex){
+        return ARGB_COLORS[temperatureIndex];
     }
 
 }
@@ -1,6 +1,8 @@
 package ch.epfl.rigel.gui;
 
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 
 import java.time.LocalDate;
@@ -11,6 +13,9 @@ import java.time.ZonedDateTime;
 /**
  * DateTimeBean
  *
+ * The date, time and zone are also combined in a single zoned date time property, which changes once when the three
+ * are set together, so that listeners never observe a half-updated date and time.
+ *
  * @author Philip Hamelink (311769)
  * @author Malo Ranzetti (296956)
  */
@@ -18,6 +23,9 @@ public final class DateTimeBean {
     private final ObjectProperty<LocalDate> date;
     private final ObjectProperty<LocalTime> time;
     private final ObjectProperty<ZoneId> zoneId;
+    private final ReadOnlyObjectWrapper<ZonedDateTime> zonedDateTime;
+    //True while the date, time and zone are being set together
+    private boolean updating;
 
     /**
      * DateTimeBean constructor, initializing all properties to null
@@ -26,6 +34,10 @@ public final class DateTimeBean {
         this.date = new SimpleObjectProperty<>(null);
         this.time = new SimpleObjectProperty<>(null);
         this.zoneId = new SimpleObjectProperty<>(null);
+        this.zonedDateTime = new ReadOnlyObjectWrapper<>(null);
+        date.addListener((p, o, n) -> updateZonedDateTime());
+        time.addListener((p, o, n) -> updateZonedDateTime());
+        zoneId.addListener((p, o, n) -> updateZonedDateTime());
     }
 
     /**
@@ -41,9 +53,20 @@ public final class DateTimeBean {
      * @param zonedDateTime new zoned date time to set
      */
     public void setZonedDateTime(ZonedDateTime zonedDateTime) {
-        setDate(zonedDateTime.toLocalDate());
-        setTime(zonedDateTime.toLocalTime());
-        setZoneId(zonedDateTime.getZone());
+        updating = true;
+        try {
+            setDate(zonedDateTime.toLocalDate());
+            setTime(zonedDateTime.toLocalTime());
+            setZoneId(zonedDateTime.getZone());
+        } finally {
+            updating = false;
+        }
+        updateZonedDateTime();
+    }
+
+    private void updateZonedDateTime() {
+        if (updating) return;
+        zonedDateTime.set(getDate() == null || getTime() == null || getZoneId() == null ? null : getZonedDateTime());
     }
 
     /**
@@ -101,13 +124,24 @@ public final class DateTimeBean {
     public void setZoneId(ZoneId newZoneId) { zoneId.set(newZoneId);}
 
     /**
-     * Getter for ZonedDateTime
+     * Getter for ZonedDateTime, combining the current date, time and zone
      * @return ZonedDateTime
+     * @throws NullPointerException if the date, the time or the zone is not set
      */
     public ZonedDateTime getZonedDateTime() {
         return ZonedDateTime.of(getDate(), getTime(), getZoneId());
     }
 
+    /**
+     * Returns property concerning the zoned date time, combining the date, time and zone. It is null until the three
+     * are set, and it is only updated once setZonedDateTime has set all three, so that listeners of the date, the
+     * time or the zone may still read the previous value from it during setZonedDateTime
+     * @return zoned date time property
+     */
+    public ReadOnlyObjectProperty<ZonedDateTime> zonedDateTimeProperty() {
+        return zonedDateTime.getReadOnlyProperty();
+    }
+
 
 
 }
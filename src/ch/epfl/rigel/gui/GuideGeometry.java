@@ -0,0 +1,194 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.coordinates.CartesianCoordinates;
+import ch.epfl.rigel.coordinates.HorizontalCoordinates;
+import ch.epfl.rigel.coordinates.StereographicProjection;
+import ch.epfl.rigel.math.Angle;
+import javafx.geometry.Point2D;
+import javafx.scene.transform.Transform;
+
+import java.util.List;
+
+/**
+ * Guide geometry
+ *
+ * Position on the canvas of the horizon, of its octant labels and of the altitude guides, with their labels. It only
+ * depends on the center of the projection, on the plane to canvas transform and on the width of the canvas, so it
+ * can be reused as long as they do not change, whatever the observation time.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class GuideGeometry {
+
+    private static final List<HorizontalCoordinates.OCTANT> OCTANTS = List.of(HorizontalCoordinates.OCTANT.values());
+    private static final int MIN_ALTITUDE_GUIDE_DEG = -50;
+    private static final int MAX_ALTITUDE_GUIDE_DEG = 80;
+    private static final int ALTITUDE_GUIDE_STEP_DEG = 10;
+
+    //Key of the geometry
+    private final double centerAz, centerAlt;
+    private final double mxx, mxy, tx, myx, myy, ty;
+    private final double canvasWidth;
+
+    //Circles of the horizon (index 0) and of the altitude guides, as x, y and radius
+    private final double[] circles;
+    //Label positions of the octants and of the altitude guides, as x and y
+    private final double[] octantLabels;
+    private final double[] altitudeLabels;
+    private final int[] altitudesDeg;
+
+    private GuideGeometry(StereographicProjection projection, Transform planeToCanvas, double canvasWidth) {
+        this.centerAz = projection.getCenter().az();
+        this.centerAlt = projection.getCenter().alt();
+        this.mxx = planeToCanvas.getMxx();
+        this.mxy = planeToCanvas.getMxy();
+        this.tx = planeToCanvas.getTx();
+        this.myx = planeToCanvas.getMyx();
+        this.myy = planeToCanvas.getMyy();
+        this.ty = planeToCanvas.getTy();
+        this.canvasWidth = canvasWidth;
+
+        int guideCount = (MAX_ALTITUDE_GUIDE_DEG - MIN_ALTITUDE_GUIDE_DEG) / ALTITUDE_GUIDE_STEP_DEG + 1;
+        altitudesDeg = new int[guideCount];
+        circles = new double[3 * guideCount];
+        altitudeLabels = new double[2 * guideCount];
+        //The horizon is the guide of altitude 0, it comes first
+        int next = 1;
+        for (int alt = MIN_ALTITUDE_GUIDE_DEG; alt <= MAX_ALTITUDE_GUIDE_DEG; alt += ALTITUDE_GUIDE_STEP_DEG) {
+            if (alt != 0) altitudesDeg[next++] = alt;
+        }
+
+        for (int i = 0; i < guideCount; ++i) {
+            HorizontalCoordinates parallel = HorizontalCoordinates.ofDeg(0, altitudesDeg[i]);
+            CartesianCoordinates center = projection.circleCenterForParallel(parallel);
+            Point2D centerOnCanvas = planeToCanvas.transform(center.x(), center.y());
+            circles[3 * i] = centerOnCanvas.getX();
+            circles[3 * i + 1] = centerOnCanvas.getY();
+            circles[3 * i + 2] = planeToCanvas.deltaTransform(Math.abs(projection.circleRadiusForParallel(parallel)), 0).getX();
+
+            CartesianCoordinates label = projection.apply(
+                    HorizontalCoordinates.of(projection.getCenter().az(), Angle.ofDeg(altitudesDeg[i] + 0.5)));
+            altitudeLabels[2 * i] = canvasWidth / 2;
+            altitudeLabels[2 * i + 1] = planeToCanvas.transform(0, label.y()).getY();
+        }
+
+        octantLabels = new double[2 * OCTANTS.size()];
+        for (int i = 0; i < OCTANTS.size(); ++i) {
+            CartesianCoordinates label = projection.apply(HorizontalCoordinates.ofDeg(OCTANTS.get(i).getOctantAngle(), -0.5));
+            Point2D labelOnCanvas = planeToCanvas.transform(label.x(), label.y());
+            octantLabels[2 * i] = labelOnCanvas.getX();
+            octantLabels[2 * i + 1] = labelOnCanvas.getY();
+        }
+    }
+
+    /**
+     * Returns the guide geometry for the given projection, transform and canvas width, reusing the given geometry if
+     * it was computed for them
+     * @param cached previously computed geometry (may be null)
+     * @param projection stereographic projection used
+     * @param planeToCanvas plane to canvas transform used
+     * @param canvasWidth width of the canvas
+     * @return guide geometry
+     */
+    public static GuideGeometry of(GuideGeometry cached, StereographicProjection projection, Transform planeToCanvas,
+                                   double canvasWidth) {
+        return cached != null && cached.matches(projection, planeToCanvas, canvasWidth)
+                ? cached : new GuideGeometry(projection, planeToCanvas, canvasWidth);
+    }
+
+    private boolean matches(StereographicProjection projection, Transform planeToCanvas, double canvasWidth) {
+        return projection.getCenter().az() == centerAz && projection.getCenter().alt() == centerAlt
+                && planeToCanvas.getMxx() == mxx && planeToCanvas.getMxy() == mxy && planeToCanvas.getTx() == tx
+                && planeToCanvas.getMyx() == myx && planeToCanvas.getMyy() == myy && planeToCanvas.getTy() == ty
+                && canvasWidth == this.canvasWidth;
+    }
+
+    /**
+     * Returns the number of guide circles, the first one being the horizon
+     * @return number of circles
+     */
+    public int circleCount() {
+        return altitudesDeg.length;
+    }
+
+    /**
+     * Returns the altitude of a guide circle
+     * @param index index of the circle
+     * @return altitude of the circle (in degrees)
+     */
+    public int circleAltitudeDeg(int index) {
+        return altitudesDeg[index];
+    }
+
+    /**
+     * Returns the x coordinate of the center of a guide circle on the canvas
+     * @param index index of the circle
+     * @return x coordinate of the center
+     */
+    public double circleCenterX(int index) {
+        return circles[3 * index];
+    }
+
+    /**
+     * Returns the y coordinate of the center of a guide circle on the canvas
+     * @param index index of the circle
+     * @return y coordinate of the center
+     */
+    public double circleCenterY(int index) {
+        return circles[3 * index + 1];
+    }
+
+    /**
+     * Returns the radius of a guide circle on the canvas
+     * @param index index of the circle
+     * @return radius of the circle
+     */
+    public double circleRadius(int index) {
+        return circles[3 * index + 2];
+    }
+
+    /**
+     * Returns the x coordinate of the label of a guide circle on the canvas
+     * @param index index of the circle
+     * @return x coordinate of the label
+     */
+    public double circleLabelX(int index) {
+        return altitudeLabels[2 * index];
+    }
+
+    /**
+     * Returns the y coordinate of the label of a guide circle on the canvas
+     * @param index index of the circle
+     * @return y coordinate of the label
+     */
+    public double circleLabelY(int index) {
+        return altitudeLabels[2 * index + 1];
+    }
+
+    /**
+     * Returns the octants labelled on the horizon
+     * @return list of octants
+     */
+    public List<HorizontalCoordinates.OCTANT> octants() {
+        return OCTANTS;
+    }
+
+    /**
+     * Returns the x coordinate of the label of an octant on the canvas
+     * @param index index of the octant
+     * @return x coordinate of the label
+     */
+    public double octantLabelX(int index) {
+        return octantLabels[2 * index];
+    }
+
+    /**
+     * Returns the y coordinate of the label of an octant on the canvas
+     * @param index index of the octant
+     * @return y coordinate of the label
+     */
+    public double octantLabelY(int index) {
+        return octantLabels[2 * index + 1];
+    }
+}
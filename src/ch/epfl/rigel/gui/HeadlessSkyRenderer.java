@@ -0,0 +1,239 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.astronomy.AsterismLoader;
+import ch.epfl.rigel.astronomy.HygDatabaseLoader;
+import ch.epfl.rigel.astronomy.ObservedSky;
+import ch.epfl.rigel.astronomy.StarCatalogue;
+import ch.epfl.rigel.coordinates.StereographicProjection;
+import ch.epfl.rigel.math.Angle;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Transform;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Headless sky renderer
+ *
+ * Renders views of the sky to PNG files without any window. Observed skies are computed and images are encoded on a
+ * worker pool, only the painting itself runs on the JavaFX application thread, on an off-screen canvas. The JavaFX
+ * toolkit must be started, on servers without display it can run on a virtual frame buffer (e.g. xvfb) or with the
+ * headless Monocle platform.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class HeadlessSkyRenderer implements AutoCloseable {
+
+    public static final int DEFAULT_WIDTH = 1920;
+    public static final int DEFAULT_HEIGHT = 1080;
+    //Number of jobs in progress per thread, bounds the memory used by the images waiting to be encoded
+    private static final int JOBS_PER_THREAD = 2;
+
+    private final StarCatalogue catalogue;
+    private final int width;
+    private final int height;
+    private final ExecutorService pool;
+    private final Semaphore jobsInProgress;
+
+    //Only accessed from the JavaFX application thread
+    private Canvas canvas;
+    private SkyCanvasPainter painter;
+
+    /**
+     * Headless sky renderer constructor
+     * @param catalogue catalogue of stars and asterisms
+     * @param width width of the images (in pixels)
+     * @param height height of the images (in pixels)
+     * @param threads number of threads of the worker pool
+     * @throws IllegalArgumentException if the size of the images or the number of threads is not strictly positive
+     */
+    public HeadlessSkyRenderer(StarCatalogue catalogue, int width, int height, int threads) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Image size must be strictly positive");
+        if (threads <= 0) throw new IllegalArgumentException("Number of threads must be strictly positive");
+        this.catalogue = catalogue;
+        this.width = width;
+        this.height = height;
+        this.jobsInProgress = new Semaphore(JOBS_PER_THREAD * threads);
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Rigel headless renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Renders a view of the sky to a PNG file. Blocks while too many jobs are in progress, so it must not be called
+     * from the JavaFX application thread
+     * @param view view to render
+     * @param output PNG file to write
+     * @return future completed once the file is written
+     */
+    public CompletableFuture<Void> render(SkyView view, Path output) {
+        jobsInProgress.acquireUninterruptibly();
+        return renderPixels(view)
+                .thenAcceptAsync(pixels -> writePng(pixels, output), pool)
+                .whenComplete((r, e) -> jobsInProgress.release());
+    }
+
+    /**
+     * Renders a view of the sky to pixels, the observed sky being computed on the worker pool. Does not block, the
+     * caller is responsible for bounding the number of images in progress
+     * @param view view to render
+     * @return future completed with the pixels of the image in ARGB format, row by row
+     */
+    public CompletableFuture<int[]> renderPixels(SkyView view) {
+        return CompletableFuture
+                .supplyAsync(() -> new ObservedSky(view.when(), view.where(),
+                        new StereographicProjection(view.center()), catalogue), pool)
+                .thenApplyAsync(sky -> paint(view, sky), Platform::runLater);
+    }
+
+    /**
+     * Returns the width of the images
+     * @return width of the images (in pixels)
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the images
+     * @return height of the images (in pixels)
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Renders views of the sky to PNG files, in parallel
+     * @param views views to render
+     * @param outputs PNG file to write for each view
+     * @return future completed once all files are written
+     * @throws IllegalArgumentException if there is not one output per view
+     */
+    public CompletableFuture<Void> renderAll(List<SkyView> views, List<Path> outputs) {
+        if (views.size() != outputs.size()) throw new IllegalArgumentException("One output per view is required");
+        CompletableFuture<?>[] jobs = new CompletableFuture<?>[views.size()];
+        for (int i = 0; i < views.size(); ++i) {
+            jobs[i] = render(views.get(i), outputs.get(i));
+        }
+        return CompletableFuture.allOf(jobs);
+    }
+
+    //Paints the sky and returns its pixels in ARGB format, on the JavaFX application thread
+    private int[] paint(SkyView view, ObservedSky sky) {
+        if (canvas == null) {
+            canvas = new Canvas(width, height);
+            painter = new SkyCanvasPainter(canvas);
+        }
+        painter.draw(sky, sky.projection(), planeToCanvas(width, height, view.fieldOfViewDeg()));
+        WritableImage image = canvas.snapshot(null, null);
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return pixels;
+    }
+
+    private void writePng(int[] pixels, Path output) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        try {
+            ImageIO.write(image, "png", output.toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the transform from the plane of the projection to an image, as used by the sky canvas manager
+     * @param width width of the image (in pixels)
+     * @param height height of the image (in pixels)
+     * @param fieldOfViewDeg horizontal field of view (in degrees)
+     * @return plane to image transform
+     */
+    public static Transform planeToCanvas(double width, double height, double fieldOfViewDeg) {
+        double dilationFactor = width / (2 * Math.tan(Angle.ofDeg(fieldOfViewDeg) / 4));
+        return Transform.affine(dilationFactor, 0, 0, -dilationFactor, width / 2, height / 2);
+    }
+
+    /**
+     * Stops the worker pool, jobs in progress are completed
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    //Catalogue of the stars and asterisms shipped with Rigel
+    static StarCatalogue loadCatalogue() throws IOException {
+        try (InputStream hs = HeadlessSkyRenderer.class.getResourceAsStream("/hygdata_v3.csv");
+             InputStream ast = HeadlessSkyRenderer.class.getResourceAsStream("/asterisms.txt")) {
+            return new StarCatalogue.Builder()
+                    .loadFrom(hs, HygDatabaseLoader.INSTANCE)
+                    .loadFrom(ast, AsterismLoader.INSTANCE)
+                    .build();
+        }
+    }
+
+    /**
+     * Renders Rigel view files to PNG images, with the default size
+     * @param args output directory, followed by the Rigel view files to render
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: HeadlessSkyRenderer <output directory> <view.rgvf>...");
+            return;
+        }
+
+        StarCatalogue catalogue;
+        try {
+            catalogue = loadCatalogue();
+        } catch (Exception e) {
+            System.err.println("Error loading star data");
+            return;
+        }
+
+        Path outputDirectory = Paths.get(args[0]);
+        List<SkyView> views = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        try {
+            Files.createDirectories(outputDirectory);
+            for (int i = 1; i < args.length; ++i) {
+                Path file = Paths.get(args[i]);
+                views.add(SkyView.readFrom(file));
+                outputs.add(outputDirectory.resolve(file.getFileName().toString().replaceFirst("\\.rgvf$", "") + ".png"));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read views: " + e.getMessage());
+            return;
+        }
+
+        Platform.startup(() -> {});
+        long start = System.nanoTime();
+        try (HeadlessSkyRenderer renderer = new HeadlessSkyRenderer(catalogue, DEFAULT_WIDTH, DEFAULT_HEIGHT,
+                Runtime.getRuntime().availableProcessors())) {
+            renderer.renderAll(views, outputs).join();
+            System.out.printf("Rendered %d views in %.1f s%n", views.size(), (System.nanoTime() - start) / 1e9);
+        } catch (RuntimeException e) {
+            System.err.println("Could not render views");
+            e.printStackTrace();
+        } finally {
+            Platform.exit();
+        }
+    }
+}
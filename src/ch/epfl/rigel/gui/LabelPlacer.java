@@ -0,0 +1,84 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Label placer
+ *
+ * Places rectangular labels on a canvas without overlaps. The canvas is divided in a uniform grid of square cells,
+ * a label is accepted if all the cells it covers are free, and then occupies them. Placing a label thus only costs
+ * the number of cells it covers, whatever the number of labels already placed. Cells are marked with the number of
+ * the current placement, so that starting a new one does not require clearing the grid.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class LabelPlacer {
+
+    private final double cellSize;
+    private double width;
+    private double height;
+    private int columns;
+    private int rows;
+    private int[] cells;
+    private int placement;
+
+    /**
+     * Label placer constructor
+     * @param cellSize side of the cells of the grid (in pixels), smaller cells reject less labels but cost more
+     * @throws IllegalArgumentException if the size of the cells is not strictly positive
+     */
+    public LabelPlacer(double cellSize) {
+        Preconditions.checkArgument(cellSize > 0);
+        this.cellSize = cellSize;
+        this.cells = new int[0];
+    }
+
+    /**
+     * Starts a new placement, on an empty canvas of the given size
+     * @param width width of the canvas
+     * @param height height of the canvas
+     */
+    public void reset(double width, double height) {
+        this.width = width;
+        this.height = height;
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        if (cells.length < columns * rows || placement == Integer.MAX_VALUE) {
+            cells = cells.length < columns * rows ? new int[columns * rows] : cells;
+            Arrays.fill(cells, 0);
+            placement = 0;
+        }
+        ++placement;
+    }
+
+    /**
+     * Places a label if it is entirely on the canvas and does not overlap any label already placed
+     * @param x x coordinate of the top left corner of the label
+     * @param y y coordinate of the top left corner of the label
+     * @param labelWidth width of the label
+     * @param labelHeight height of the label
+     * @return true if the label was placed
+     */
+    public boolean tryPlace(double x, double y, double labelWidth, double labelHeight) {
+        if (x < 0 || y < 0 || x + labelWidth > width || y + labelHeight > height) return false;
+        int column0 = (int) (x / cellSize);
+        int column1 = Math.min(columns - 1, (int) ((x + labelWidth) / cellSize));
+        int row0 = (int) (y / cellSize);
+        int row1 = Math.min(rows - 1, (int) ((y + labelHeight) / cellSize));
+
+        for (int row = row0; row <= row1; ++row) {
+            for (int column = column0; column <= column1; ++column) {
+                if (cells[row * columns + column] == placement) return false;
+            }
+        }
+        for (int row = row0; row <= row1; ++row) {
+            for (int column = column0; column <= column1; ++column) {
+                cells[row * columns + column] = placement;
+            }
+        }
+        return true;
+    }
+}
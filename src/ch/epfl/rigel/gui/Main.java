@@ -3,7 +3,6 @@ package ch.epfl.rigel.gui;
 import ch.epfl.rigel.astronomy.*;
 import ch.epfl.rigel.coordinates.GeographicCoordinates;
 import ch.epfl.rigel.coordinates.HorizontalCoordinates;
-import ch.epfl.rigel.math.Angle;
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.StringBinding;
@@ -104,7 +103,8 @@ public class Main extends Application {
         BorderPane root = new BorderPane();
 
         HBox primaryBox = controlBar(dateTimeBean, observerLocationBean, canvasManager, viewingParametersBean, primaryStage);
-        Pane skyPane = new Pane(sky);
+        Pane skyPane = new Pane();
+        skyPane.getChildren().addAll(canvasManager.getLayerCanvases());
         BorderPane infoBar = infoBar(viewingParametersBean, canvasManager);
         BorderPane sideBar = sideBar(canvasManager, primaryStage);
 
@@ -196,6 +196,8 @@ public class Main extends Application {
         asterisms.setSelected(false);
         CheckBox realism = new CheckBox("\u2ba1  Realistic starry sky");
         asterisms.setSelected(false);
+        CheckBox pixelBuffer = new CheckBox("\u2ba1  Pixel buffer stars");
+        pixelBuffer.setSelected(false);
         CheckBox planets = new CheckBox("Planets");
         planets.setSelected(true);
         CheckBox sun = new CheckBox("Sun");
@@ -204,28 +206,54 @@ public class Main extends Application {
         sun.setSelected(true);
         CheckBox moon = new CheckBox("Moon");
         moon.setSelected(true);
+        CheckBox milkyWay = new CheckBox("Milky Way");
+        milkyWay.setSelected(false);
         CheckBox alt = new CheckBox("Altitude guides");
         alt.setSelected(false);
+        CheckBox labels = new CheckBox("Labels");
+        labels.setSelected(false);
+        CheckBox frameSkipping = new CheckBox("Skip idle frames");
+        frameSkipping.setSelected(false);
+        CheckBox interpolation = new CheckBox("Interpolate frames");
+        interpolation.setSelected(false);
+        CheckBox adaptiveQuality = new CheckBox("Adaptive quality");
+        adaptiveQuality.setSelected(false);
+        //Statistics are only collected when started with -Drigel.statistics=true
+        CheckBox statistics = new CheckBox("Render statistics");
+        statistics.setSelected(false);
+        statistics.setVisible(RenderStatistics.ENABLED);
+        statistics.setManaged(RenderStatistics.ENABLED);
         Button fullScreen = new Button();
 
         //Rendering bindings
         canvasManager.getSkyCanvasPainter().starsEnabledProperty().bindBidirectional(stars.selectedProperty());
         canvasManager.getSkyCanvasPainter().asterismsEnabledProperty().bindBidirectional(asterisms.selectedProperty());
         canvasManager.getSkyCanvasPainter().realisticSkyEnabledProperty().bindBidirectional(realism.selectedProperty());
+        canvasManager.getSkyCanvasPainter().pixelBufferStarsEnabledProperty().bindBidirectional(pixelBuffer.selectedProperty());
         canvasManager.getSkyCanvasPainter().planetsEnabledProperty().bindBidirectional(planets.selectedProperty());
         canvasManager.getSkyCanvasPainter().sunEnabledProperty().bindBidirectional(sun.selectedProperty());
         canvasManager.getSkyCanvasPainter().moonEnabledProperty().bindBidirectional(moon.selectedProperty());
         canvasManager.getSkyCanvasPainter().realisticSunEnabledProperty().bindBidirectional(sunlight.selectedProperty());
         canvasManager.getSkyCanvasPainter().altitudeLinesEnabledProperty().bindBidirectional(alt.selectedProperty());
+        canvasManager.getSkyCanvasPainter().milkyWayEnabledProperty().bindBidirectional(milkyWay.selectedProperty());
+        canvasManager.getSkyCanvasPainter().labelsEnabledProperty().bindBidirectional(labels.selectedProperty());
+        canvasManager.getTimeAnimator().frameSkippingEnabledProperty().bindBidirectional(frameSkipping.selectedProperty());
+        canvasManager.getSkyFramePrefetcher().interpolationEnabledProperty().bindBidirectional(interpolation.selectedProperty());
+        canvasManager.getQualityGovernor().enabledProperty().bindBidirectional(adaptiveQuality.selectedProperty());
+        canvasManager.getSkyCanvasPainter().statisticsEnabledProperty().bindBidirectional(statistics.selectedProperty());
 
         stars.selectedProperty().addListener((p,o,n) ->{if(n){
             asterisms.setDisable(false);
             asterisms.setSelected(false);
             realism.setDisable(false);
             realism.setSelected(false);
+            pixelBuffer.setDisable(false);
+            pixelBuffer.setSelected(false);
         }else{
             realism.setDisable(true);
             realism.setSelected(false);
+            pixelBuffer.setDisable(true);
+            pixelBuffer.setSelected(false);
             asterisms.setDisable(true);
             asterisms.setSelected(false);
         }});
@@ -300,7 +328,7 @@ public class Main extends Application {
 
         infoBox.addColumn(1, objectLabel, objectImage, description);
         centerAt.addColumn(1, centerAtChoiceBox, setCenterButton, centeredLabel, indicatorOn);
-        graphicsBox.addColumn(1, graphicsLabel ,stars, asterisms, realism, planets, sun, sunlight, moon, alt, fullScreen);
+        graphicsBox.addColumn(1, graphicsLabel ,stars, asterisms, realism, pixelBuffer, planets, sun, sunlight, moon, milkyWay, alt, labels, frameSkipping, interpolation, adaptiveQuality, statistics, fullScreen);
         BorderPane constructed = new BorderPane();
         constructed.setTop(infoBox);
         constructed.setCenter(centerAt);
@@ -345,19 +373,9 @@ public class Main extends Application {
             if(toSave != null) {
                 try {
                     //Write current parameters to file
-                    BufferedWriter fw = new BufferedWriter(new FileWriter(toSave));
-                    fw.write(Double.toString(viewingParameters.getCenter().az()));
-                    fw.newLine();
-                    fw.write(Double.toString(viewingParameters.getCenter().alt()));
-                    fw.newLine();
-                    fw.write(Double.toString(viewingParameters.getFieldOfViewDeg()));
-                    fw.newLine();
-                    fw.write(dateTimeBean.getZonedDateTime().toString());
-                    fw.newLine();
-                    fw.write(Double.toString(observerLocationBean.getCoordinates().lon()));
-                    fw.newLine();
-                    fw.write(Double.toString(observerLocationBean.getCoordinates().lat()));
-                    fw.close();
+                    new SkyView(viewingParameters.getCenter(), viewingParameters.getFieldOfViewDeg(),
+                            dateTimeBean.getZonedDateTime(), observerLocationBean.getCoordinates())
+                            .writeTo(toSave.toPath());
                 } catch (IOException ex) {
                     System.err.println("Could not save file!");
                 }
@@ -369,13 +387,11 @@ public class Main extends Application {
             if(toOpen != null) {
                 try {
                     //Set parameters to parameters read from file
-                    BufferedReader fr = new BufferedReader(new FileReader(toOpen));
-                    viewingParameters.setCenter(HorizontalCoordinates.of(Double.parseDouble(fr.readLine()), Double.parseDouble(fr.readLine())));
-                    viewingParameters.setFieldOfViewDeg(Double.parseDouble(fr.readLine()));
-                    dateTimeBean.setZonedDateTime(ZonedDateTime.parse(fr.readLine()));
-                    observerLocationBean.setCoordinates(GeographicCoordinates.ofDeg(Angle.toDeg(Double.parseDouble(fr.readLine())), Angle.toDeg(Double.parseDouble(fr.readLine()))));
-
-                    fr.close();
+                    SkyView view = SkyView.readFrom(toOpen.toPath());
+                    viewingParameters.setCenter(view.center());
+                    viewingParameters.setFieldOfViewDeg(view.fieldOfViewDeg());
+                    dateTimeBean.setZonedDateTime(view.when());
+                    observerLocationBean.setCoordinates(view.where());
                 } catch (IOException ex) {
                     System.err.println("Could not open file!");
                 }
@@ -542,7 +558,16 @@ public class Main extends Application {
         mousePosCoord.textProperty().bind(format("Azimuth : %.2f°, altitude : %.2f°", canvasManager.mouseAzDegProperty(),
                 canvasManager.mouseAltDegProperty()));
 
-        infoPane.setLeft(fov);
+        Text redraws = new Text();
+        redraws.textProperty().bind(format("Redraws : %d (%d suppressed)",
+                canvasManager.getRepaintScheduler().repaintsProperty(),
+                canvasManager.getRepaintScheduler().suppressedRepaintsProperty()));
+
+        Text quality = new Text();
+        quality.textProperty().bind(format("Quality : %s", canvasManager.getSkyCanvasPainter().qualityProperty()));
+        quality.visibleProperty().bind(canvasManager.getQualityGovernor().enabledProperty());
+
+        infoPane.setLeft(new HBox(20, fov, redraws, quality));
         infoPane.setCenter(objectUnderMouse);
         infoPane.setRight(mousePosCoord);
 
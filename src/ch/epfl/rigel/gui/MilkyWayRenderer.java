@@ -0,0 +1,337 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.astronomy.ObservedSky;
+import ch.epfl.rigel.coordinates.EquatorialCoordinates;
+import ch.epfl.rigel.coordinates.EquatorialToHorizontalConversion;
+import ch.epfl.rigel.coordinates.HorizontalCoordinates;
+import ch.epfl.rigel.math.Angle;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.NonInvertibleTransformException;
+import javafx.scene.transform.Transform;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Milky Way renderer
+ *
+ * Renders the Milky Way and the brightest deep-sky objects (Magellanic Clouds, Andromeda galaxy) from a low
+ * resolution map of the whole sky in galactic coordinates, generated procedurally. The map is reprojected into an
+ * image of a fraction of the canvas resolution, scaled up when drawn: every pixel is projected back onto the sky and
+ * rotated into galactic coordinates, the rows of the image being processed in parallel on a fork/join pool.
+ *
+ * The image is kept as long as the sky did not move by more than half a pixel of it, so it is only reprojected when
+ * the projection center, the field of view or the canvas change, or when enough sidereal time went by.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class MilkyWayRenderer {
+
+    //Resolution of the map, in galactic longitude and latitude (half a degree)
+    private static final int MAP_WIDTH = 720;
+    private static final int MAP_HEIGHT = 360;
+    //The image is reprojected at a fraction of the canvas resolution
+    private static final int DOWNSAMPLING = 4;
+    //Below this number of rows, a task reprojects its rows itself instead of splitting
+    private static final int ROWS_PER_TASK = 8;
+    //Displacement of the sky (in pixels of the image) from which the image is reprojected
+    private static final double STALE_DISPLACEMENT = 0.5;
+    private static final double MAX_OPACITY = 0.4;
+    private static final int RED = 205, GREEN = 215, BLUE = 255;
+    //Rotation from equatorial (J2000) to galactic coordinates, row by row
+    private static final double[] EQUATORIAL_TO_GALACTIC = {
+            -0.0548755604, -0.8734370902, -0.4838350155,
+            0.4941094279, -0.4448296300, 0.7469822445,
+            -0.8676661490, -0.1980763734, 0.4559837762};
+
+    private final ForkJoinPool pool;
+    private float[] map;
+
+    //State of the image: rotation from the projection frame to galactic coordinates, plane to canvas transform and
+    //size of the canvas it was reprojected for
+    private final double[] rotation = new double[9];
+    private final double[] transform = new double[6];
+    private double canvasWidth;
+    private double canvasHeight;
+    private WritableImage image;
+    private int[] pixels;
+
+    /**
+     * Creates a Milky Way renderer using the common fork/join pool
+     */
+    public MilkyWayRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a Milky Way renderer using the given pool
+     * @param pool pool on which rows are reprojected
+     */
+    public MilkyWayRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Checks if the image must be reprojected to match the given sky
+     * @param sky observed sky
+     * @param planeToCanvas plane to canvas transform
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @return true if the last image does not match the sky anymore
+     */
+    public boolean isStale(ObservedSky sky, Transform planeToCanvas, double width, double height) {
+        if (image == null || width != canvasWidth || height != canvasHeight) return true;
+        if (transform[0] != planeToCanvas.getMxx() || transform[1] != planeToCanvas.getMxy()
+                || transform[2] != planeToCanvas.getTx() || transform[3] != planeToCanvas.getMyx()
+                || transform[4] != planeToCanvas.getMyy() || transform[5] != planeToCanvas.getTy()) return true;
+
+        //For small rotations, the largest difference of the matrices is about the angle the sky rotated by
+        double[] newRotation = rotationToGalactic(sky);
+        double angle = 0;
+        for (int i = 0; i < rotation.length; ++i) {
+            angle = Math.max(angle, Math.abs(newRotation[i] - rotation[i]));
+        }
+        return angle * pixelsPerRadian(planeToCanvas, width, height) > STALE_DISPLACEMENT;
+    }
+
+    //Largest number of pixels of the image per radian on the sky, reached in the corners of the canvas
+    private static double pixelsPerRadian(Transform planeToCanvas, double width, double height) {
+        double dilation = Math.hypot(planeToCanvas.getMxx(), planeToCanvas.getMyx());
+        double maxPlaneRadius = Math.hypot(width, height) / (2 * dilation);
+        return dilation / DOWNSAMPLING * (1 + maxPlaneRadius * maxPlaneRadius) / 2;
+    }
+
+    /**
+     * Returns the image of the Milky Way for the given sky, to be drawn over the whole canvas. The last image is
+     * returned if it still matches the sky
+     * @param sky observed sky
+     * @param planeToCanvas plane to canvas transform
+     * @param width width of the canvas
+     * @param height height of the canvas
+     * @return image of the Milky Way, or null if the canvas is empty
+     */
+    public Image render(ObservedSky sky, Transform planeToCanvas, double width, double height) {
+        if (width < 1 || height < 1) return null;
+        if (!isStale(sky, planeToCanvas, width, height)) return image;
+
+        double[] inverse;
+        try {
+            Transform canvasToPlane = planeToCanvas.createInverse();
+            inverse = new double[]{canvasToPlane.getMxx(), canvasToPlane.getMxy(), canvasToPlane.getTx(),
+                    canvasToPlane.getMyx(), canvasToPlane.getMyy(), canvasToPlane.getTy()};
+        } catch (NonInvertibleTransformException e) {
+            return null;
+        }
+        if (map == null) map = buildMap();
+
+        int imageWidth = (int) Math.ceil(width / DOWNSAMPLING);
+        int imageHeight = (int) Math.ceil(height / DOWNSAMPLING);
+        if (image == null || (int) image.getWidth() != imageWidth || (int) image.getHeight() != imageHeight) {
+            image = new WritableImage(imageWidth, imageHeight);
+            pixels = new int[imageWidth * imageHeight];
+        }
+        System.arraycopy(rotationToGalactic(sky), 0, rotation, 0, rotation.length);
+        transform[0] = planeToCanvas.getMxx();
+        transform[1] = planeToCanvas.getMxy();
+        transform[2] = planeToCanvas.getTx();
+        transform[3] = planeToCanvas.getMyx();
+        transform[4] = planeToCanvas.getMyy();
+        transform[5] = planeToCanvas.getTy();
+        canvasWidth = width;
+        canvasHeight = height;
+
+        pool.invoke(new RowRange(0, imageHeight, imageWidth, width / imageWidth, height / imageHeight, inverse));
+        image.getPixelWriter().setPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbPreInstance(),
+                pixels, 0, imageWidth);
+        return image;
+    }
+
+    private void reprojectRows(int from, int to, int imageWidth, double scaleX, double scaleY, double[] inverse) {
+        double[] r = rotation;
+        for (int row = from; row < to; ++row) {
+            double canvasY = (row + 0.5) * scaleY;
+            for (int column = 0; column < imageWidth; ++column) {
+                double canvasX = (column + 0.5) * scaleX;
+                double x = inverse[0] * canvasX + inverse[1] * canvasY + inverse[2];
+                double y = inverse[3] * canvasX + inverse[4] * canvasY + inverse[5];
+
+                //Inverse stereographic projection, in the frame of the projection
+                double rho2 = x * x + y * y;
+                double k = 1 / (1 + rho2);
+                double vx = 2 * x * k;
+                double vy = 2 * y * k;
+                double vz = (1 - rho2) * k;
+
+                double gx = r[0] * vx + r[1] * vy + r[2] * vz;
+                double gy = r[3] * vx + r[4] * vy + r[5] * vz;
+                double gz = r[6] * vx + r[7] * vy + r[8] * vz;
+                double l = Math.atan2(gy, gx);
+                double b = Math.asin(Math.max(-1, Math.min(1, gz)));
+
+                double alpha = MAX_OPACITY * sample(l, b);
+                pixels[row * imageWidth + column] = ((int) Math.round(255 * alpha) << 24)
+                        | ((int) Math.round(RED * alpha) << 16)
+                        | ((int) Math.round(GREEN * alpha) << 8)
+                        | (int) Math.round(BLUE * alpha);
+            }
+        }
+    }
+
+    //Bilinear interpolation of the map at the given galactic longitude and latitude (in radians)
+    private double sample(double l, double b) {
+        double u = Angle.normalizePositive(l) / Angle.TAU * MAP_WIDTH - 0.5;
+        double v = Math.max(0, Math.min(MAP_HEIGHT - 1, (b / Math.PI + 0.5) * MAP_HEIGHT - 0.5));
+        int u0 = (int) Math.floor(u);
+        int v0 = Math.min((int) v, MAP_HEIGHT - 2);
+        double fu = u - u0;
+        double fv = v - v0;
+        int column0 = Math.floorMod(u0, MAP_WIDTH);
+        int column1 = (column0 + 1) % MAP_WIDTH;
+        int row0 = v0 * MAP_WIDTH;
+        int row1 = row0 + MAP_WIDTH;
+        double top = map[row0 + column0] + fu * (map[row0 + column1] - map[row0 + column0]);
+        double bottom = map[row1 + column0] + fu * (map[row1 + column1] - map[row1 + column0]);
+        return top + fv * (bottom - top);
+    }
+
+    //Rotation from the frame of the projection (x, y of the plane and center) to galactic coordinates, row by row
+    private static double[] rotationToGalactic(ObservedSky sky) {
+        HorizontalCoordinates center = sky.projection().getCenter();
+        double sinAz = Math.sin(center.az()), cosAz = Math.cos(center.az());
+        double sinAlt = Math.sin(center.alt()), cosAlt = Math.cos(center.alt());
+        //Axes of the projection frame in horizontal coordinates (north, east, zenith), as columns
+        double[] projectionToHorizontal = {
+                -sinAz, -sinAlt * cosAz, cosAlt * cosAz,
+                cosAz, -sinAlt * sinAz, cosAlt * sinAz,
+                0, cosAlt, sinAlt};
+
+        //Axes of the equatorial frame in horizontal coordinates, as columns
+        EquatorialToHorizontalConversion conversion = new EquatorialToHorizontalConversion(sky.when(), sky.where());
+        double[] equatorialToHorizontal = new double[9];
+        setColumn(equatorialToHorizontal, 0, conversion.apply(EquatorialCoordinates.of(0, 0)));
+        setColumn(equatorialToHorizontal, 1, conversion.apply(EquatorialCoordinates.of(Math.PI / 2, 0)));
+        setColumn(equatorialToHorizontal, 2, conversion.apply(EquatorialCoordinates.of(0, Math.PI / 2)));
+
+        //The inverse of a rotation is its transpose
+        return multiply(EQUATORIAL_TO_GALACTIC, multiply(transpose(equatorialToHorizontal), projectionToHorizontal));
+    }
+
+    private static void setColumn(double[] matrix, int column, HorizontalCoordinates direction) {
+        matrix[column] = Math.cos(direction.alt()) * Math.cos(direction.az());
+        matrix[3 + column] = Math.cos(direction.alt()) * Math.sin(direction.az());
+        matrix[6 + column] = Math.sin(direction.alt());
+    }
+
+    private static double[] transpose(double[] m) {
+        return new double[]{m[0], m[3], m[6], m[1], m[4], m[7], m[2], m[5], m[8]};
+    }
+
+    private static double[] multiply(double[] a, double[] b) {
+        double[] product = new double[9];
+        for (int i = 0; i < 3; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                product[3 * i + j] = a[3 * i] * b[j] + a[3 * i + 1] * b[3 + j] + a[3 * i + 2] * b[6 + j];
+            }
+        }
+        return product;
+    }
+
+    //Brightness of the sky in [0, 1], for every half degree of galactic longitude and latitude
+    private static float[] buildMap() {
+        float[] map = new float[MAP_WIDTH * MAP_HEIGHT];
+        for (int row = 0; row < MAP_HEIGHT; ++row) {
+            double b = ((row + 0.5) / MAP_HEIGHT - 0.5) * 180;
+            for (int column = 0; column < MAP_WIDTH; ++column) {
+                double l = (column + 0.5) / MAP_WIDTH * 360;
+                map[row * MAP_WIDTH + column] = (float) brightness(l > 180 ? l - 360 : l, b);
+            }
+        }
+        return map;
+    }
+
+    //Brightness at the given galactic longitude (in ]-180, 180]) and latitude, in degrees
+    private static double brightness(double l, double b) {
+        //Towards the galactic center (l = 0) the band is brighter and wider
+        double central = 0.5 + 0.5 * Math.cos(Math.toRadians(l));
+        double thickness = 4 + 6 * central;
+        double disc = (0.3 + 0.7 * central * central) * Math.exp(-0.5 * (b / thickness) * (b / thickness));
+        double bulge = 0.6 * Math.exp(-(l * l + 2 * b * b) / (2 * 8 * 8));
+        //Dust lanes of the Great Rift, from Cygnus to Sagittarius
+        double rift = l > -35 && l < 65
+                ? 0.6 * Math.exp(-0.5 * ((b - 1) / 1.8) * ((b - 1) / 1.8)) * Math.sin(Math.toRadians((l + 35) * 1.8))
+                : 0;
+        double clumps = 0.6 + 0.5 * noise(l, b, 6) + 0.3 * noise(l, b, 2);
+        double milkyWay = (disc + bulge) * clumps * (1 - Math.max(0, rift));
+
+        double deepSky = blob(l, b, -79.5, -32.9, 3.5, 0.35)    //Large Magellanic Cloud
+                + blob(l, b, -57.2, -44.3, 1.8, 0.25)              //Small Magellanic Cloud
+                + blob(l, b, 121.2, -21.6, 1.0, 0.2);              //Andromeda galaxy
+        return Math.max(0, Math.min(1, milkyWay + deepSky));
+    }
+
+    private static double blob(double l, double b, double centerL, double centerB, double radius, double peak) {
+        double dl = Math.IEEEremainder(l - centerL, 360) * Math.cos(Math.toRadians(centerB));
+        double db = b - centerB;
+        return peak * Math.exp(-(dl * dl + db * db) / (2 * radius * radius));
+    }
+
+    //Smooth value noise in [0, 1] on a lattice of the given cell size (in degrees), periodic in longitude
+    private static double noise(double l, double b, double cell) {
+        int period = (int) Math.round(360 / cell);
+        double u = (l + 180) / cell;
+        double v = (b + 90) / cell;
+        int u0 = (int) Math.floor(u);
+        int v0 = (int) Math.floor(v);
+        double fu = smooth(u - u0);
+        double fv = smooth(v - v0);
+        double top = lattice(u0, v0, period) + fu * (lattice(u0 + 1, v0, period) - lattice(u0, v0, period));
+        double bottom = lattice(u0, v0 + 1, period) + fu * (lattice(u0 + 1, v0 + 1, period) - lattice(u0, v0 + 1, period));
+        return top + fv * (bottom - top);
+    }
+
+    private static double smooth(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static double lattice(int u, int v, int period) {
+        int h = Math.floorMod(u, period) * 73856093 ^ v * 19349663;
+        h ^= h >>> 13;
+        h *= 0x5bd1e995;
+        h ^= h >>> 15;
+        return (h & 0xffff) / 65535d;
+    }
+
+    private final class RowRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int imageWidth;
+        private final double scaleX;
+        private final double scaleY;
+        private final double[] inverse;
+
+        private RowRange(int from, int to, int imageWidth, double scaleX, double scaleY, double[] inverse) {
+            this.from = from;
+            this.to = to;
+            this.imageWidth = imageWidth;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.inverse = inverse;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                reprojectRows(from, to, imageWidth, scaleX, scaleY, inverse);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowRange(from, middle, imageWidth, scaleX, scaleY, inverse),
+                        new RowRange(middle, to, imageWidth, scaleX, scaleY, inverse));
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.astronomy.ObservedSky;
+import ch.epfl.rigel.astronomy.StarCatalogue;
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.coordinates.StereographicProjection;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Observed sky computer
+ *
+ * Builds observed skies on a worker thread and publishes the latest completed one on the JavaFX application thread.
+ * Requests are not queued: only the most recent one waiting to be computed is kept, older ones are dropped.
+ * A request whose computation fails is reported and retried a little later, unless a newer request replaces it.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class ObservedSkyComputer {
+
+    //Delay before a failed computation is retried (in milliseconds)
+    private static final long RETRY_DELAY = 1000;
+
+    private final StarCatalogue catalogue;
+    private final ScheduledExecutorService worker;
+    private final AtomicReference<Request> pendingRequest;
+    private final ReadOnlyObjectWrapper<ObservedSky> observedSky;
+    private SkyFramePrefetcher prefetcher;
+    //Only accessed from the worker thread, true from a failed computation to the next successful one so that
+    //repeated failures are reported once
+    private boolean failing;
+
+    //Only accessed from the JavaFX application thread
+    private long lastRequestId;
+    private long lastPublishedId;
+
+    /**
+     * Observed sky computer constructor, the first observed sky is computed immediately on the calling thread so that
+     * a sky is always available
+     * @param catalogue catalogue of stars and asterisms
+     * @param when initial time of observation
+     * @param where initial position of observation
+     * @param projection initial projection
+     */
+    public ObservedSkyComputer(StarCatalogue catalogue, ZonedDateTime when, GeographicCoordinates where,
+                               StereographicProjection projection) {
+        this.catalogue = catalogue;
+        this.pendingRequest = new AtomicReference<>(null);
+        this.observedSky = new ReadOnlyObjectWrapper<>(new ObservedSky(when, where, projection, catalogue));
+        this.worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Rigel observed sky computer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Asks for an observed sky to be computed with the given parameters. The request replaces the one waiting to be
+     * computed, if any. Must be called from the JavaFX application thread
+     * @param when time of observation
+     * @param where position of observation
+     * @param projection projection to use
+     */
+    public void request(ZonedDateTime when, GeographicCoordinates where, StereographicProjection projection) {
+        if (prefetcher != null) {
+            Optional<ObservedSky> prefetched = prefetcher.lookup(when, where, projection);
+            if (prefetched.isPresent()) {
+                //Any request waiting to be computed is now stale
+                pendingRequest.set(null);
+                publish(++lastRequestId, prefetched.get());
+                return;
+            }
+        }
+        Request previous = pendingRequest.getAndSet(new Request(++lastRequestId, when, where, projection, false));
+        //A computation is only scheduled if none is already waiting, the waiting one will pick up this request. A
+        //failed request waits for its retry, this one is computed without waiting for it
+        if (previous == null || previous.failed) worker.execute(this::computePending);
+    }
+
+    private void computePending() {
+        Request request = pendingRequest.getAndSet(null);
+        if (request == null) return;
+        try {
+            long start = RenderStatistics.start();
+            ObservedSky sky = new ObservedSky(request.when, request.where, request.projection, catalogue);
+            RenderStatistics.stop(RenderStatistics.Stage.OBSERVED_SKY, start);
+            failing = false;
+            Platform.runLater(() -> publish(request.id, sky));
+        } catch (RuntimeException e) {
+            if (!failing) {
+                failing = true;
+                System.err.println("Could not compute the observed sky, retrying");
+                e.printStackTrace();
+            }
+            //The request stays pending and is retried, unless a newer one replaced it in the meantime
+            Request failed = new Request(request.id, request.when, request.where, request.projection, true);
+            if (pendingRequest.compareAndSet(null, failed))
+                worker.schedule(this::computePending, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish(long requestId, ObservedSky sky) {
+        if (requestId <= lastPublishedId) return;
+        lastPublishedId = requestId;
+        observedSky.set(sky);
+    }
+
+    /**
+     * Sets the prefetcher whose frames, when ready, are used instead of computing the sky
+     * @param prefetcher prefetcher to use (can be null)
+     */
+    public void setPrefetcher(SkyFramePrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Returns the latest observed sky published
+     * @return latest observed sky
+     */
+    public ObservedSky getObservedSky() {
+        return observedSky.get();
+    }
+
+    /**
+     * Returns the latest observed sky published as a read only property
+     * @return latest observed sky property
+     */
+    public ReadOnlyObjectProperty<ObservedSky> observedSkyProperty() {
+        return observedSky.getReadOnlyProperty();
+    }
+
+    private static final class Request {
+        private final long id;
+        private final ZonedDateTime when;
+        private final GeographicCoordinates where;
+        private final StereographicProjection projection;
+        //True if the computation of this request failed and is waiting to be retried
+        private final boolean failed;
+
+        private Request(long id, ZonedDateTime when, GeographicCoordinates where, StereographicProjection projection,
+                        boolean failed) {
+            this.id = id;
+            this.when = when;
+            this.where = where;
+            this.projection = projection;
+            this.failed = failed;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ch.epfl.rigel.gui;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
+
+/**
+ * Quality governor
+ *
+ * Keeps the time taken to draw the sky within a frame budget by adapting the render quality. The draw times are
+ * smoothed with an exponential moving average: the quality is lowered by one level while they exceed the budget and
+ * raised by one level while they leave enough headroom. After each change, the new level is measured for a few frames
+ * before deciding again, and a level that was immediately too slow is retried less and less often, so that the
+ * quality does not flicker between two levels.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class QualityGovernor {
+
+    public static final double DEFAULT_FRAME_BUDGET_MS = 1000d / 30;
+    //Weight of the last frame in the average draw time
+    private static final double SMOOTHING = 0.2;
+    //The quality is only raised if frames take less than this fraction of the budget
+    private static final double HEADROOM = 0.5;
+    private static final int COOLDOWN_FRAMES = 10;
+    private static final int MAX_RAISE_COOLDOWN_FRAMES = 640;
+
+    private final ObjectProperty<RenderQuality> quality;
+    private final Runnable frameRequest;
+    private final BooleanProperty enabled;
+    private final ReadOnlyDoubleWrapper averageFrameTimeMs;
+    private final double frameBudgetMs;
+    private int framesSinceChange;
+    private int raiseCooldownFrames;
+    private boolean lastChangeRaised;
+
+    /**
+     * Quality governor constructor, the governor is disabled until it is enabled
+     * @param quality quality property to adapt (e.g. the one of a sky canvas painter)
+     * @param frameRequest action requesting a new frame to be drawn, used to measure a new level when the sky does
+     *                     not change
+     * @param frameBudgetMs target draw time of a frame (in milliseconds)
+     * @throws IllegalArgumentException if the budget is not strictly positive
+     */
+    public QualityGovernor(ObjectProperty<RenderQuality> quality, Runnable frameRequest, double frameBudgetMs) {
+        if (!(frameBudgetMs > 0)) throw new IllegalArgumentException("Frame budget must be strictly positive");
+        this.quality = quality;
+        this.frameRequest = frameRequest;
+        this.frameBudgetMs = frameBudgetMs;
+        this.enabled = new SimpleBooleanProperty(false);
+        this.averageFrameTimeMs = new ReadOnlyDoubleWrapper(Double.NaN);
+        this.raiseCooldownFrames = COOLDOWN_FRAMES;
+
+        //Disabling the governor gives back the full quality
+        enabled.addListener((p, o, n) -> {
+            raiseCooldownFrames = COOLDOWN_FRAMES;
+            if (!n) setQuality(RenderQuality.FULL, false);
+        });
+    }
+
+    /**
+     * Records the time taken to draw a frame of the whole sky and adapts the quality if needed
+     * @param nanos draw time of the frame (in nanoseconds)
+     */
+    public void frameDrawn(long nanos) {
+        if (!enabled.get()) return;
+        double frameTimeMs = nanos / 1e6;
+        double average = averageFrameTimeMs.get();
+        averageFrameTimeMs.set(Double.isNaN(average) ? frameTimeMs : average + SMOOTHING * (frameTimeMs - average));
+        ++framesSinceChange;
+
+        RenderQuality current = quality.get();
+        if (averageFrameTimeMs.get() > frameBudgetMs) {
+            if (framesSinceChange < COOLDOWN_FRAMES || current == current.lower()) return;
+            //The level just raised to is too slow, wait longer before trying it again
+            if (lastChangeRaised && framesSinceChange < 2 * COOLDOWN_FRAMES)
+                raiseCooldownFrames = Math.min(2 * raiseCooldownFrames, MAX_RAISE_COOLDOWN_FRAMES);
+            setQuality(current.lower(), false);
+        } else if (averageFrameTimeMs.get() < HEADROOM * frameBudgetMs && current != current.higher()) {
+            if (framesSinceChange >= raiseCooldownFrames) setQuality(current.higher(), true);
+            //Keep measuring while the sky does not change, unless a better level was just found too slow
+            else if (raiseCooldownFrames == COOLDOWN_FRAMES) frameRequest.run();
+        }
+    }
+
+    private void setQuality(RenderQuality newQuality, boolean raised) {
+        framesSinceChange = 0;
+        lastChangeRaised = raised;
+        averageFrameTimeMs.set(Double.NaN);
+        if (quality.get() == newQuality) return;
+        quality.set(newQuality);
+        frameRequest.run();
+    }
+
+    /**
+     * Returns the target draw time of a frame
+     * @return frame budget (in milliseconds)
+     */
+    public double getFrameBudgetMs() {
+        return frameBudgetMs;
+    }
+
+    /**
+     * Returns the average draw time of the frames since the quality last changed
+     * @return average draw time (in milliseconds), NaN if no frame was drawn since
+     */
+    public double getAverageFrameTimeMs() {
+        return averageFrameTimeMs.get();
+    }
+
+    /**
+     * Returns property concerning the average draw time of the frames
+     * @return average draw time property
+     */
+    public ReadOnlyDoubleProperty averageFrameTimeMsProperty() {
+        return averageFrameTimeMs.getReadOnlyProperty();
+    }
+
+    /**
+     * Checks if the governor is enabled
+     * @return true if the governor is enabled
+     */
+    public boolean isEnabled() {
+        return enabled.get();
+    }
+
+    /**
+     * Returns property concerning the governor
+     * @return enabled property
+     */
+    public BooleanProperty enabledProperty() {
+        return enabled;
+    }
+
+    /**
+     * Set governor enabled
+     * @param enabled new value
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled.set(enabled);
+    }
+}
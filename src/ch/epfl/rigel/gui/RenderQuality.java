@@ -0,0 +1,72 @@
+package ch.epfl.rigel.gui;
+
+import java.util.List;
+
+/**
+ * Render quality
+ *
+ * Quality levels of the sky, from the best to the cheapest to draw. Each level gives up one more detail than the
+ * previous one, on top of the rendering options chosen by the user.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public enum RenderQuality {
+    FULL, FAINT_STARS_HIDDEN, NO_HALOS, SIMPLE_SUN, NO_ASTERISMS;
+
+    /**
+     * List of all quality levels, from the best to the cheapest
+     */
+    public static final List<RenderQuality> ALL = List.of(RenderQuality.values());
+
+    //Magnitude of the faintest stars drawn once faint stars are hidden
+    private static final double REDUCED_LIMITING_MAGNITUDE = 4.5;
+
+    /**
+     * Returns the magnitude of the faintest stars drawn at this level
+     * @return limiting magnitude of the stars (infinite if all stars are drawn)
+     */
+    public double limitingMagnitude() {
+        return compareTo(FAINT_STARS_HIDDEN) >= 0 ? REDUCED_LIMITING_MAGNITUDE : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Checks if the halos of the realistic sky are drawn at this level
+     * @return true if halos are drawn
+     */
+    public boolean drawsHalos() {
+        return compareTo(NO_HALOS) < 0;
+    }
+
+    /**
+     * Checks if the light of the Sun is drawn with a simplified gradient at this level
+     * @return true if the Sun gradient is simplified
+     */
+    public boolean simplifiesSunGradient() {
+        return compareTo(SIMPLE_SUN) >= 0;
+    }
+
+    /**
+     * Checks if asterisms are drawn at this level
+     * @return true if asterisms are drawn
+     */
+    public boolean drawsAsterisms() {
+        return compareTo(NO_ASTERISMS) < 0;
+    }
+
+    /**
+     * Returns the next cheaper level
+     * @return next cheaper level, or this level if it is the cheapest
+     */
+    public RenderQuality lower() {
+        return ordinal() + 1 < ALL.size() ? ALL.get(ordinal() + 1) : this;
+    }
+
+    /**
+     * Returns the next better level
+     * @return next better level, or this level if it is the best
+     */
+    public RenderQuality higher() {
+        return ordinal() > 0 ? ALL.get(ordinal() - 1) : this;
+    }
+}
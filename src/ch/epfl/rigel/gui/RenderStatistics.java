@@ -0,0 +1,191 @@
+package ch.epfl.rigel.gui;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Render statistics
+ *
+ * Lightweight in-process timings of the stages of a frame, together with the number of objects drawn and culled.
+ * Statistics are only collected when the JVM is started with -Drigel.statistics=true: otherwise ENABLED is a
+ * constant false and every call returns immediately, so that the JIT compiler removes them altogether.
+ *
+ * Stages are timed by surrounding them with start and stop (or lap for consecutive stages), from any thread. The
+ * timings are averaged over windows of one second, the report of the last complete window is given by latest.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class RenderStatistics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("rigel.statistics");
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    /**
+     * Timed stages of a frame
+     */
+    public enum Stage {
+        OBSERVED_SKY("Observed sky"), MILKY_WAY("Milky Way"), STAR_CULLING("Star culling"), STARS("Stars"), ASTERISMS("Asterisms"),
+        PLANETS("Planets"), SUN("Sun"), MOON("Moon"), HORIZON("Horizon"), LABELS("Labels");
+
+        /**
+         * List of all stages
+         */
+        public static final List<Stage> ALL = List.of(Stage.values());
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the name of the stage, as displayed
+         * @return name of the stage
+         */
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Object counts of the last frame
+     */
+    public enum Counter {
+        STARS_DRAWN, STARS_CULLED, ASTERISMS_DRAWN, ASTERISMS_CULLED;
+
+        /**
+         * List of all counters
+         */
+        public static final List<Counter> ALL = List.of(Counter.values());
+    }
+
+    private static final AtomicLongArray stageNanos = new AtomicLongArray(Stage.ALL.size());
+    private static final AtomicLongArray stageSamples = new AtomicLongArray(Stage.ALL.size());
+    private static final AtomicLongArray counters = new AtomicLongArray(Counter.ALL.size());
+    //Only accessed from the thread counting frames
+    private static long windowStart;
+    private static long framesInWindow;
+    private static volatile Report latest = new Report(Double.NaN, new double[Stage.ALL.size()],
+            new long[Counter.ALL.size()]);
+
+    private RenderStatistics() {
+    }
+
+    /**
+     * Starts timing a stage
+     * @return start time to give to stop or lap (0 if statistics are disabled)
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing a stage
+     * @param stage stage timed
+     * @param start start time returned by start
+     */
+    public static void stop(Stage stage, long start) {
+        if (!ENABLED) return;
+        stageNanos.addAndGet(stage.ordinal(), System.nanoTime() - start);
+        stageSamples.incrementAndGet(stage.ordinal());
+    }
+
+    /**
+     * Stops timing a stage and starts timing the next one
+     * @param stage stage timed
+     * @param start start time returned by start or by the previous lap
+     * @return start time of the next stage (0 if statistics are disabled)
+     */
+    public static long lap(Stage stage, long start) {
+        if (!ENABLED) return 0;
+        long now = System.nanoTime();
+        stageNanos.addAndGet(stage.ordinal(), now - start);
+        stageSamples.incrementAndGet(stage.ordinal());
+        return now;
+    }
+
+    /**
+     * Sets an object count of the current frame
+     * @param counter counter to set
+     * @param value number of objects
+     */
+    public static void count(Counter counter, long value) {
+        if (!ENABLED) return;
+        counters.set(counter.ordinal(), value);
+    }
+
+    /**
+     * Records that a frame was drawn, frames must always be recorded from the same thread
+     */
+    public static void frame() {
+        if (!ENABLED) return;
+        long now = System.nanoTime();
+        if (windowStart == 0) windowStart = now;
+        ++framesInWindow;
+        if (now - windowStart < WINDOW_NANOS) return;
+
+        double[] averageMs = new double[Stage.ALL.size()];
+        for (int i = 0; i < averageMs.length; ++i) {
+            long samples = stageSamples.getAndSet(i, 0);
+            long nanos = stageNanos.getAndSet(i, 0);
+            averageMs[i] = samples == 0 ? Double.NaN : nanos / 1e6 / samples;
+        }
+        long[] counts = new long[Counter.ALL.size()];
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = counters.get(i);
+        }
+        latest = new Report(framesInWindow * 1e9 / (now - windowStart), averageMs, counts);
+        windowStart = now;
+        framesInWindow = 0;
+    }
+
+    /**
+     * Returns the statistics of the last complete window
+     * @return last report
+     */
+    public static Report latest() {
+        return latest;
+    }
+
+    /**
+     * Statistics of a window
+     */
+    public static final class Report {
+        private final double fps;
+        private final double[] averageMs;
+        private final long[] counts;
+
+        private Report(double fps, double[] averageMs, long[] counts) {
+            this.fps = fps;
+            this.averageMs = averageMs;
+            this.counts = counts;
+        }
+
+        /**
+         * Returns the number of frames drawn per second
+         * @return frames per second (NaN if no window is complete yet)
+         */
+        public double fps() {
+            return fps;
+        }
+
+        /**
+         * Returns the average time spent in a stage
+         * @param stage stage
+         * @return average time (in milliseconds), NaN if the stage did not run during the window
+         */
+        public double averageMs(Stage stage) {
+            return averageMs[stage.ordinal()];
+        }
+
+        /**
+         * Returns an object count of the last frame of the window
+         * @param counter counter
+         * @return number of objects
+         */
+        public long count(Counter counter) {
+            return counts[counter.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.epfl.rigel.gui;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+
+/**
+ * Repaint scheduler
+ *
+ * Coalesces repaint requests: a request only marks the repaint as pending, and the repaint is done at most once per
+ * JavaFX pulse, after the animation timers and before the layout and rendering of the scene. A single change
+ * invalidating several properties therefore causes a single repaint. All methods must be called from the JavaFX
+ * application thread.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class RepaintScheduler {
+
+    private final Runnable repaint;
+    private final Runnable pulseListener;
+    private final ReadOnlyLongWrapper requestedRepaints;
+    private final ReadOnlyLongWrapper repaints;
+    private final ReadOnlyLongWrapper suppressedRepaints;
+    private boolean pending;
+
+    /**
+     * Repaint scheduler constructor
+     * @param node node whose scene's pulses are used to repaint
+     * @param repaint action repainting the node
+     */
+    public RepaintScheduler(Node node, Runnable repaint) {
+        this.repaint = repaint;
+        this.pulseListener = this::onPulse;
+        this.requestedRepaints = new ReadOnlyLongWrapper(0);
+        this.repaints = new ReadOnlyLongWrapper(0);
+        this.suppressedRepaints = new ReadOnlyLongWrapper(0);
+
+        //Follow the node from one scene to another
+        if (node.getScene() != null) node.getScene().addPreLayoutPulseListener(pulseListener);
+        node.sceneProperty().addListener((p, o, n) -> attach(o, n));
+    }
+
+    private void attach(Scene oldScene, Scene newScene) {
+        if (oldScene != null) oldScene.removePreLayoutPulseListener(pulseListener);
+        if (newScene != null) {
+            newScene.addPreLayoutPulseListener(pulseListener);
+            if (pending) Platform.requestNextPulse();
+        }
+    }
+
+    /**
+     * Asks for a repaint during the next pulse, requests made while one is pending are merged with it
+     */
+    public void requestRepaint() {
+        requestedRepaints.set(requestedRepaints.get() + 1);
+        if (pending) {
+            suppressedRepaints.set(suppressedRepaints.get() + 1);
+            return;
+        }
+        pending = true;
+        Platform.requestNextPulse();
+    }
+
+    /**
+     * Repaints immediately, the pending repaint (if any) is done now instead of during the next pulse
+     */
+    public void repaintNow() {
+        pending = false;
+        repaint.run();
+        repaints.set(repaints.get() + 1);
+    }
+
+    private void onPulse() {
+        if (pending) repaintNow();
+    }
+
+    /**
+     * Returns the number of repaints requested
+     * @return number of repaints requested
+     */
+    public long getRequestedRepaints() {
+        return requestedRepaints.get();
+    }
+
+    /**
+     * Returns property concerning the number of repaints requested
+     * @return requested repaints property
+     */
+    public ReadOnlyLongProperty requestedRepaintsProperty() {
+        return requestedRepaints.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns the number of repaints done
+     * @return number of repaints done
+     */
+    public long getRepaints() {
+        return repaints.get();
+    }
+
+    /**
+     * Returns property concerning the number of repaints done
+     * @return repaints property
+     */
+    public ReadOnlyLongProperty repaintsProperty() {
+        return repaints.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns the number of redundant repaints suppressed, as they were requested while one was already pending
+     * @return number of suppressed repaints
+     */
+    public long getSuppressedRepaints() {
+        return suppressedRepaints.get();
+    }
+
+    /**
+     * Returns property concerning the number of redundant repaints suppressed
+     * @return suppressed repaints property
+     */
+    public ReadOnlyLongProperty suppressedRepaintsProperty() {
+        return suppressedRepaints.getReadOnlyProperty();
+    }
+}
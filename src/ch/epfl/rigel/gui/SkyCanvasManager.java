@@ -6,6 +6,7 @@ import ch.epfl.rigel.coordinates.HorizontalCoordinates;
 import ch.epfl.rigel.coordinates.StereographicProjection;
 import ch.epfl.rigel.math.Angle;
 import ch.epfl.rigel.math.ClosedInterval;
+import javafx.beans.Observable;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
 import javafx.beans.value.ObservableBooleanValue;
@@ -18,10 +19,12 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.transform.NonInvertibleTransformException;
 import javafx.scene.transform.Transform;
 
-import java.util.HashMap;
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.DoubleSupplier;
 
 /**
  * Sky Canvas Manager
@@ -45,9 +48,14 @@ public class SkyCanvasManager {
 
     //Graphical elements
     private final ObservableObjectValue<Canvas> canvas;
+    private final Map<SkyLayer, Canvas> layerCanvases;
     private final ObservableObjectValue<SkyCanvasPainter> skyCanvasPainter;
+    private final RepaintScheduler repaintScheduler;
+    private final QualityGovernor qualityGovernor;
 
     //Given
+    private final ObservedSkyComputer skyComputer;
+    private final SkyFramePrefetcher prefetcher;
     private final ObservableObjectValue<ObservedSky> observedSky;
     private final ObservableObjectValue<StereographicProjection> projection;
     private final ObservableObjectValue<Transform> planeToCanvas;
@@ -80,19 +88,35 @@ public class SkyCanvasManager {
         this.dateTimeBean = dateTimeBean;
         this.viewingParameters = viewingParameters;
 
-        //Create canvas
+        //Create canvas, the overlay canvas is on top of the others and receives the events
         this.canvas = new SimpleObjectProperty<>(new Canvas(CANVAS_WIDTH, CANVAS_HEIGHT));
         canvas.get().getGraphicsContext2D();
+        layerCanvases = new EnumMap<>(SkyLayer.class);
+        for (SkyLayer layer : SkyLayer.ALL) {
+            if (layer == SkyLayer.OVERLAY) {
+                layerCanvases.put(layer, canvas.get());
+            } else {
+                Canvas layerCanvas = new Canvas(CANVAS_WIDTH, CANVAS_HEIGHT);
+                layerCanvas.widthProperty().bind(canvas.get().widthProperty());
+                layerCanvas.heightProperty().bind(canvas.get().heightProperty());
+                layerCanvas.setMouseTransparent(true);
+                layerCanvases.put(layer, layerCanvas);
+            }
+        }
 
 
         //Create bindings for projection and observed sky
         projection = Bindings.createObjectBinding(() -> new StereographicProjection(viewingParameters.getCenter()), viewingParameters.centerProperty());
 
-        observedSky = Bindings.createObjectBinding(() ->new ObservedSky(this.dateTimeBean.getZonedDateTime(),
-                        this.observerLocation.getCoordinates(), this.projection.get(), starCatalogue),
-                        this.dateTimeBean.dateProperty(), this.dateTimeBean.timeProperty(),
-                        this.dateTimeBean.zoneIdProperty(), this.observerLocation.coordinatesProperty(),
-                        this.projection);
+        //Observed skies are computed in the background, the latest completed one is published on the FX thread
+        skyComputer = new ObservedSkyComputer(starCatalogue, this.dateTimeBean.getZonedDateTime(),
+                this.observerLocation.getCoordinates(), this.projection.get());
+        observedSky = skyComputer.observedSkyProperty();
+        prefetcher = new SkyFramePrefetcher(starCatalogue, this.observerLocation.getCoordinates(), this.projection.get());
+        skyComputer.setPrefetcher(prefetcher);
+        //The date, time and zone are listened to together, a change of time thus causes a single request
+        addSkyComputationSensibilities(List.of(this.dateTimeBean.zonedDateTimeProperty(),
+                this.observerLocation.coordinatesProperty(), this.projection));
 
 
         //Create bindings for transformation properties
@@ -145,15 +169,41 @@ public class SkyCanvasManager {
         }, mousePositionInPlane, observedSky, mousePresentOverPane);
 
         //Bind sky painter
-        this.skyCanvasPainter = new SimpleObjectProperty<>(new SkyCanvasPainter(this.canvas.get()));
+        this.skyCanvasPainter = new SimpleObjectProperty<>(new SkyCanvasPainter(layerCanvases));
+        //Invalidated layers are repainted at most once per pulse, however many changes happened since the last one
+        repaintScheduler = new RepaintScheduler(canvas.get(), this::repaint);
+        //Frames requested by the governor redraw the stars, which take most of the draw time
+        qualityGovernor = new QualityGovernor(getSkyCanvasPainter().qualityProperty(), () -> {
+            getSkyCanvasPainter().invalidate(SkyLayer.STARS, SkyLayer.SOLAR_SYSTEM);
+            refreshCanvas();
+        }, QualityGovernor.DEFAULT_FRAME_BUDGET_MS);
         timeAcc = new SimpleObjectProperty<>();
         this.timeAnimator = new SimpleObjectProperty<> (new TimeAnimator(this.dateTimeBean));
+        timeAnimator.get().setPrefetcher(prefetcher);
+        DoubleSupplier pixelsPerRadian = () -> {
+            //The stereographic projection stretches the sky the most at the corners of the canvas
+            double maxPlaneRadius = Math.hypot(canvas.get().getWidth(), canvas.get().getHeight()) / (2 * dilationFactor.get());
+            return dilationFactor.get() * (1 + maxPlaneRadius * maxPlaneRadius) / 2;
+        };
+        timeAnimator.get().setPixelsPerRadian(pixelsPerRadian);
+        prefetcher.setPixelsPerRadian(pixelsPerRadian);
         timeAcc.addListener((p,o,n) -> timeAnimator.getValue().setAccelerator(n));
 
-        //Set sensitivities for canvas refresh
-        observedSky.addListener((p,o,n) -> refreshCanvas());
-        planeToCanvas.addListener((p,o,n) -> refreshCanvas());
-        objectUnderMouse.addListener((p,o,n) -> refreshCanvas());
+        //Set sensitivities for canvas refresh, only the layers depending on what changed are repainted
+        observedSky.addListener((p,o,n) -> {
+            getSkyCanvasPainter().invalidate(SkyLayer.STARS, SkyLayer.SOLAR_SYSTEM, SkyLayer.OVERLAY);
+            //The horizon and guides only depend on the projection the sky was computed with
+            if (o == null || o.projection() != n.projection()) getSkyCanvasPainter().invalidate(SkyLayer.GUIDES);
+            refreshCanvas();
+        });
+        planeToCanvas.addListener((p,o,n) -> {
+            getSkyCanvasPainter().invalidateAll();
+            refreshCanvas();
+        });
+        objectUnderMouse.addListener((p,o,n) -> {
+            getSkyCanvasPainter().invalidate(SkyLayer.OVERLAY);
+            refreshCanvas();
+        });
         getSkyCanvasPainter().indicatedObjectNameProperty().addListener((p,o,n) -> refreshCanvas());
         addRefreshSensibilities(getSkyCanvasPainter().getRenderingProperties());
 
@@ -249,12 +299,36 @@ public class SkyCanvasManager {
         }
     }
 
+    private void addSkyComputationSensibilities(List<Observable> sensibilities){
+        for(Observable s : sensibilities){
+            s.addListener(o -> {
+                //Reading the property, rather than the bean, validates it so that it notifies its next change. It is
+                //null while the date, the time or the zone is unset
+                ZonedDateTime when = dateTimeBean.zonedDateTimeProperty().get();
+                if (when == null) return;
+                //Frames prefetched for a previous view are discarded
+                prefetcher.setView(observerLocation.getCoordinates(), projection.get());
+                skyComputer.request(when, observerLocation.getCoordinates(), projection.get());
+            });
+        }
+    }
+
+
+    private void repaint() {
+        //Only the frames repainting the stars are measured, the others are much cheaper
+        boolean measured = getSkyCanvasPainter().isInvalidated(SkyLayer.STARS);
+        long start = System.nanoTime();
+        getSkyCanvasPainter().drawInvalidated(observedSky.get(), observedSky.get().projection(), planeToCanvas.get());
+        if (measured) qualityGovernor.frameDrawn(System.nanoTime() - start);
+        RenderStatistics.frame();
+    }
 
     /**
-     * Refreshes canvas by clearing it and drawings all elements
+     * Refreshes canvas by scheduling the repaint of the layers invalidated since they were last painted, during the
+     * next pulse. The sky is drawn with the projection it was computed with, which may lag behind the current one
      */
     public void refreshCanvas(){
-        skyCanvasPainter.get().draw(observedSky.get(), projection.get(), planeToCanvas.get());
+        repaintScheduler.requestRepaint();
     }
 
     /**
@@ -272,6 +346,30 @@ public class SkyCanvasManager {
         }
     }
 
+    /**
+     * Returns the scheduler of the canvas repaints
+     * @return repaint scheduler
+     */
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
+    }
+
+    /**
+     * Returns the prefetcher computing the frames of the time animation in advance
+     * @return sky frame prefetcher
+     */
+    public SkyFramePrefetcher getSkyFramePrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Returns the governor adapting the render quality to the frame budget
+     * @return quality governor
+     */
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
     /**
      * Returns the sky canvas manager's canvas
      * @return Sky canvas manager's canvas
@@ -280,6 +378,14 @@ public class SkyCanvasManager {
         return canvas.get();
     }
 
+    /**
+     * Returns the canvases of all layers, from bottom to top (the last one is the canvas returned by getCanvas)
+     * @return canvases of all layers
+     */
+    public List<Canvas> getLayerCanvases() {
+        return List.copyOf(layerCanvases.values());
+    }
+
     /**
      * Returns this sky canvas manager's canvas observable object value
      * @return Sky canvas manager's canvas observable object value
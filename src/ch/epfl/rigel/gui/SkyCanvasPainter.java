@@ -1,27 +1,28 @@
 package ch.epfl.rigel.gui;
 
+import ch.epfl.rigel.Preconditions;
 import ch.epfl.rigel.astronomy.*;
 import ch.epfl.rigel.coordinates.CartesianCoordinates;
 import ch.epfl.rigel.coordinates.HorizontalCoordinates;
 import ch.epfl.rigel.coordinates.StereographicProjection;
 import ch.epfl.rigel.math.Angle;
-import ch.epfl.rigel.math.ClosedInterval;
 import ch.epfl.rigel.math.RightOpenInterval;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.*;
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.BoundingBox;
 import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
+import javafx.geometry.VPos;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.CycleMethod;
-import javafx.scene.paint.RadialGradient;
-import javafx.scene.paint.Stop;
 import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 import javafx.scene.transform.Transform;
 
 import java.util.*;
@@ -30,16 +31,27 @@ import java.util.function.Function;
 /**
  * SkyCanvasPainter
  *
+ * The sky is painted on stacked layers (see SkyLayer), which can share a single canvas or each have their own. Only
+ * the layers invalidated since they were last painted are repainted by drawInvalidated.
+ *
  * @author Philip Hamelink (311769)
  * @author Malo Ranzetti (296956)
  */
 public class SkyCanvasPainter {
 
-    private static final ClosedInterval MAGNITUDE_INTERVAL = ClosedInterval.of(-2, 5);
     public static final int DIAMETER_EXTENSION_FOR_INDICATOR = 20;
+    //Margin around the canvas within which objects are still drawn, so that big halos entering it are not cut
+    private static final double SAFE_DISPLAY_MARGIN = 200;
+    //Only stars at least as bright as this are labelled, planets always are
+    private static final double LABEL_LIMITING_MAGNITUDE = 3.5;
+    private static final double LABEL_GRID_CELL_SIZE = 8;
+    private static final double LABEL_GAP = 3;
 
     private final Canvas canvas;
-    private final GraphicsContext gc;
+    private final Map<SkyLayer, GraphicsContext> layers;
+    //True if all layers share the same canvas, in which case they can only be repainted together
+    private final boolean singleCanvas;
+    private final Set<SkyLayer> invalidatedLayers;
     private final BooleanProperty starsEnabled;
     private final BooleanProperty asterismsEnabled;
     private final BooleanProperty sunEnabled;
@@ -47,20 +59,58 @@ public class SkyCanvasPainter {
     private final BooleanProperty planetsEnabled;
     private final BooleanProperty realisticSkyEnabled;
     private final BooleanProperty realisticSunEnabled;
+    private final BooleanProperty pixelBufferStarsEnabled;
     private final BooleanProperty altitudeLinesEnabled;
+    private final BooleanProperty statisticsEnabled;
+    private final BooleanProperty labelsEnabled;
+    private final BooleanProperty milkyWayEnabled;
     private final BooleanProperty indicatorIsOn;
     private final StringProperty indicatedObjectName;
-    private double dayLightFactor;
-    private double skyBrightnessFactor;
-
-
-    /**
-     * Attaches a SkyCanvasPainter to a canvas
+    private final ObjectProperty<RenderQuality> quality;
+    private final StarSpriteAtlas starSprites;
+    private final StarRasterizer starRasterizer;
+    private final AsterismRenderer asterismRenderer;
+    private final MilkyWayRenderer milkyWayRenderer;
+    //Indices of the stars kept by the culling, reused from one frame to the next
+    private int[] visibleStars = new int[0];
+    //Geometry of the horizon and altitude guides, kept as long as the projection center and transform do not change
+    private GuideGeometry guideGeometry;
+    private final LabelPlacer labelPlacer = new LabelPlacer(LABEL_GRID_CELL_SIZE);
+    //Width of the label of each name, measured once
+    private final Map<String, Double> labelWidths = new HashMap<>();
+    private final Text labelMeasure = new Text();
+    //Height of a line of label (ascent, descent and leading of the font), measured once
+    private final double labelHeight;
+    //Reused from one frame to the next by the pixel buffer rendering of stars
+    private double[] rasterizedPoints = new double[0];
+    private double[] rasterizedDiameters = new double[0];
+    private int[] rasterizedColors = new int[0];
+    //Appearance of the atmosphere for the altitude of the Sun of the frame being drawn
+    private SkyGlow skyGlow = SkyGlow.forSunAltitude(-Math.PI / 2);
+
+
+    /**
+     * Attaches a SkyCanvasPainter to a canvas, on which all layers are painted
      * @param canvas canvas on which the sky will be painted
      */
     public SkyCanvasPainter(Canvas canvas) {
-        this.canvas = canvas;
-        gc = canvas.getGraphicsContext2D();
+        this(singleCanvasLayers(canvas));
+    }
+
+    /**
+     * Attaches a SkyCanvasPainter to stacked canvases, one per layer
+     * @param layerCanvases canvas of each layer, all of the same size
+     * @throws IllegalArgumentException if a layer has no canvas
+     */
+    public SkyCanvasPainter(Map<SkyLayer, Canvas> layerCanvases) {
+        Preconditions.checkArgument(layerCanvases.keySet().containsAll(SkyLayer.ALL));
+        this.canvas = layerCanvases.get(SkyLayer.OVERLAY);
+        layers = new EnumMap<>(SkyLayer.class);
+        for (SkyLayer layer : SkyLayer.ALL) {
+            layers.put(layer, layerCanvases.get(layer).getGraphicsContext2D());
+        }
+        singleCanvas = new HashSet<>(layerCanvases.values()).size() == 1;
+        invalidatedLayers = EnumSet.allOf(SkyLayer.class);
         starsEnabled = new SimpleBooleanProperty(true);
         asterismsEnabled = new SimpleBooleanProperty(true);
         sunEnabled = new SimpleBooleanProperty(true);
@@ -68,20 +118,107 @@ public class SkyCanvasPainter {
         planetsEnabled = new SimpleBooleanProperty(true);
         realisticSkyEnabled = new SimpleBooleanProperty(false);
         realisticSunEnabled = new SimpleBooleanProperty(false);
+        pixelBufferStarsEnabled = new SimpleBooleanProperty(false);
         altitudeLinesEnabled = new SimpleBooleanProperty(false);
+        statisticsEnabled = new SimpleBooleanProperty(false);
+        labelsEnabled = new SimpleBooleanProperty(false);
+        milkyWayEnabled = new SimpleBooleanProperty(false);
         indicatorIsOn = new SimpleBooleanProperty(false);
         indicatedObjectName = new SimpleStringProperty();
+        quality = new SimpleObjectProperty<>(RenderQuality.FULL);
+        starSprites = new StarSpriteAtlas();
+        starRasterizer = new StarRasterizer();
+        asterismRenderer = new AsterismRenderer();
+        milkyWayRenderer = new MilkyWayRenderer();
+        labelHeight = labelMeasure.getLayoutBounds().getHeight();
+
+        //Layers depending on the rendering properties are invalidated when they change
+        invalidateOnChange(List.of(starsEnabled, asterismsEnabled, realisticSkyEnabled, pixelBufferStarsEnabled),
+                SkyLayer.STARS, SkyLayer.OVERLAY);
+        invalidateOnChange(List.of(planetsEnabled, sunEnabled, moonEnabled), SkyLayer.SOLAR_SYSTEM, SkyLayer.OVERLAY);
+        invalidateOnChange(List.of(realisticSunEnabled), SkyLayer.SOLAR_SYSTEM);
+        invalidateOnChange(List.of(altitudeLinesEnabled), SkyLayer.GUIDES);
+        invalidateOnChange(List.of(milkyWayEnabled), SkyLayer.BACKGROUND);
+        invalidateOnChange(List.of(indicatorIsOn, indicatedObjectName, statisticsEnabled, labelsEnabled),
+                SkyLayer.OVERLAY);
+        invalidateOnChange(List.of(quality), SkyLayer.STARS, SkyLayer.SOLAR_SYSTEM, SkyLayer.OVERLAY);
+    }
+
+    private static Map<SkyLayer, Canvas> singleCanvasLayers(Canvas canvas) {
+        Map<SkyLayer, Canvas> layerCanvases = new EnumMap<>(SkyLayer.class);
+        for (SkyLayer layer : SkyLayer.ALL) {
+            layerCanvases.put(layer, canvas);
+        }
+        return layerCanvases;
+    }
+
+    private void invalidateOnChange(List<? extends ObservableValue<?>> observables, SkyLayer... layers) {
+        for (ObservableValue<?> observable : observables) {
+            observable.addListener((p, o, n) -> invalidate(layers));
+        }
+    }
+
+    /**
+     * Marks the given layers as needing to be repainted
+     * @param layers layers to repaint
+     */
+    public void invalidate(SkyLayer... layers) {
+        invalidatedLayers.addAll(Arrays.asList(layers));
+    }
+
+    /**
+     * Marks all layers as needing to be repainted
+     */
+    public void invalidateAll() {
+        invalidatedLayers.addAll(SkyLayer.ALL);
+    }
+
+    /**
+     * Checks if the given layer needs to be repainted
+     * @param layer layer to check
+     * @return true if the layer is invalidated
+     */
+    public boolean isInvalidated(SkyLayer layer) {
+        return invalidatedLayers.contains(layer);
+    }
+
+    /**
+     * Checks if some layers need to be repainted
+     * @return true if at least one layer is invalidated
+     */
+    public boolean hasInvalidatedLayers() {
+        return !invalidatedLayers.isEmpty();
     }
 
     /**
      * clears the canvas to a black canvas
      */
     public void clear() {
-        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        for (SkyLayer layer : SkyLayer.ALL) {
+            clearLayer(layer);
+        }
+        drawBackground();
+    }
+
+    private void clearLayer(SkyLayer layer) {
+        //Layers sharing a canvas are all cleared with the background
+        if (singleCanvas && layer != SkyLayer.BACKGROUND) return;
+        layers.get(layer).clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    private void drawBackground() {
+        GraphicsContext gc = layers.get(SkyLayer.BACKGROUND);
         gc.setFill(Color.BLACK);
         gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
     }
 
+    private void drawMilkyWay(ObservedSky sky, Transform planeToCanvas) {
+        Image image = milkyWayRenderer.render(sky, planeToCanvas, canvas.getWidth(), canvas.getHeight());
+        if (image != null) {
+            layers.get(SkyLayer.BACKGROUND).drawImage(image, 0, 0, canvas.getWidth(), canvas.getHeight());
+        }
+    }
+
     /**
      * draws all stars and asterisms
      * @param sky observed sky
@@ -89,67 +226,98 @@ public class SkyCanvasPainter {
      * @param planeToCanvas Transform used
      */
     public void drawStars (ObservedSky sky, StereographicProjection projection, Transform planeToCanvas) {
+        GraphicsContext gc = layers.get(SkyLayer.STARS);
         List<Star> stars = sky.stars();
-        Bounds safeDisplayBounds = new BoundingBox(-200,-200, canvas.getWidth()+400, canvas.getHeight()+400);
-        double[] stereoPoints = new double[sky.starCoordinates().length];
-        planeToCanvas.transform2DPoints(sky.starCoordinates(), 0, stereoPoints, 0, stars.size());
-
-        if(asterismsEnabled.get()) drawAsterisms(sky, stereoPoints);
+        double[] stereoPoints = sky.starCoordinates();
+        planeToCanvas.transform2DPoints(stereoPoints, 0, stereoPoints, 0, stars.size());
+
+        long start = RenderStatistics.start();
+        if(asterismsEnabled.get() && quality.get().drawsAsterisms()) drawAsterisms(sky, stereoPoints);
+        start = RenderStatistics.lap(RenderStatistics.Stage.ASTERISMS, start);
+
+        int visibleCount = cullStars(stars, stereoPoints, quality.get().limitingMagnitude());
+        start = RenderStatistics.lap(RenderStatistics.Stage.STAR_CULLING, start);
+        RenderStatistics.count(RenderStatistics.Counter.STARS_DRAWN, visibleCount);
+        RenderStatistics.count(RenderStatistics.Counter.STARS_CULLED, stars.size() - visibleCount);
+
+        //Halos of the realistic sky are always drawn as sprites
+        boolean halos = realisticSkyEnabled.get() && quality.get().drawsHalos();
+        boolean pixelBuffer = pixelBufferStarsEnabled.get() && !halos;
+        if (pixelBuffer && rasterizedDiameters.length < visibleCount) {
+            rasterizedPoints = new double[2 * visibleCount];
+            rasterizedDiameters = new double[visibleCount];
+            rasterizedColors = new int[visibleCount];
+        }
+        int rasterizedCount = 0;
 
-        for (int i = 0; i < stars.size(); i++) {
-            Point2D p = new Point2D(stereoPoints[2 * i], stereoPoints[2 * i + 1]);
-            double diameter = getMagnitudeBasedCelestialObjectDiameter(stars.get(i), projection, planeToCanvas);
-            if(!safeDisplayBounds.contains(p)) continue;
-            Color starColor = BlackBodyColor.colorForTemperature(stars.get(i).colorTemperature());
+        //Only the stars kept by the culling are sized and colored
+        double diameterScale = diameterScale(projection, planeToCanvas);
+        for (int v = 0; v < visibleCount; v++) {
+            int i = visibleStars[v];
+            double x = stereoPoints[2 * i];
+            double y = stereoPoints[2 * i + 1];
+            double diameter = sky.starDiameterFactor(i) * diameterScale;
 
-            if(realisticSkyEnabled.get()) {
+            if(halos) {
 
                 /*
                 BONUS
                  */
 
-                //Create a radial gradient halo from star info
-                double haloDiameter = diameter * 5;
-                RadialGradient starGradient = new RadialGradient(
-                        0,
-                        0,
-                        p.getX(),
-                        p.getY(),
-                        haloDiameter,
-                        false,
-                        CycleMethod.NO_CYCLE,
-                        new Stop(0, starColor.deriveColor(1, 1.5, 1, 1)),
-                        new Stop(0.2, starColor.deriveColor(1, 1.1, 0.1, 0.9)),
-                        new Stop(0.4, starColor.deriveColor(1, 0, 0, 0))
-                );
-                gc.setFill(starGradient);
-                gc.fillOval(p.getX()-haloDiameter/2, p.getY()-haloDiameter/2, haloDiameter, haloDiameter);
+                //Draw the pre-rendered halo matching the star's color and size
+                Image sprite = starSprites.spriteFor(stars.get(i).colorTemperature(), diameter);
+                gc.drawImage(sprite, x - sprite.getWidth() / 2, y - sprite.getHeight() / 2);
+            }else if (pixelBuffer) {
+                //Stars are only collected here and rasterized all at once below
+                rasterizedPoints[2 * rasterizedCount] = x;
+                rasterizedPoints[2 * rasterizedCount + 1] = y;
+                rasterizedDiameters[rasterizedCount] = diameter;
+                rasterizedColors[rasterizedCount] = BlackBodyColor.argbForTemperatureIndex(sky.starTemperatureIndex(i));
+                ++rasterizedCount;
             }else {
                 //Default rendering option
-                drawCelestialObject(new Point2D(stereoPoints[2 * i],stereoPoints[2 * i + 1]), planeToCanvas, BlackBodyColor.colorForTemperature(stars.get(i).colorTemperature()), getMagnitudeBasedCelestialObjectDiameter(stars.get(i), projection, planeToCanvas));
+                drawCelestialObject(gc, new Point2D(x, y),
+                        BlackBodyColor.colorForTemperatureIndex(sky.starTemperatureIndex(i)), diameter);
             }
-            if (indicatedObjectNameProperty().get().equals(stars.get(i).name()) && indicatorIsOnProperty().get())
-                drawIndicator(p, diameter);
         }
+
+        int width = (int) canvas.getWidth();
+        int height = (int) canvas.getHeight();
+        if (pixelBuffer && width > 0 && height > 0) {
+            gc.drawImage(starRasterizer.rasterize(width, height, rasterizedPoints, rasterizedDiameters,
+                    rasterizedColors, rasterizedCount), 0, 0);
+        }
+        RenderStatistics.stop(RenderStatistics.Stage.STARS, start);
+    }
+
+    //Keeps in visibleStars the indices of the stars within the safe display bounds and the limiting magnitude,
+    //returns their number
+    private int cullStars(List<Star> stars, double[] transformedPoints, double limitingMagnitude) {
+        int starCount = stars.size();
+        if (visibleStars.length < starCount) visibleStars = new int[starCount];
+        boolean limited = limitingMagnitude != Double.POSITIVE_INFINITY;
+        double minX = -SAFE_DISPLAY_MARGIN, maxX = canvas.getWidth() + SAFE_DISPLAY_MARGIN;
+        double minY = -SAFE_DISPLAY_MARGIN, maxY = canvas.getHeight() + SAFE_DISPLAY_MARGIN;
+        int count = 0;
+        for (int i = 0; i < starCount; i++) {
+            double x = transformedPoints[2 * i];
+            double y = transformedPoints[2 * i + 1];
+            if (x < minX || x > maxX || y < minY || y > maxY) continue;
+            if (limited && stars.get(i).magnitude() > limitingMagnitude) continue;
+            visibleStars[count++] = i;
+        }
+        return count;
     }
 
     private void drawAsterisms(ObservedSky sky, double[] transformedPoints) {
-        Bounds b = canvas.getBoundsInLocal();
+        GraphicsContext gc = layers.get(SkyLayer.STARS);
         gc.setStroke(Color.BLUE);
         gc.setLineWidth(1);
-        for (Asterism asterism : sky.asterisms()) {
-            gc.beginPath();
-            boolean previousInBound = true;
-            for (Integer i : sky.asterismIndex(asterism)) {
-                Point2D point = new Point2D(transformedPoints[2 * i], transformedPoints[2 * i + 1]);
-                //draws only a line if two consecutive stars not out of bound
-                boolean thisInBound = b.contains(point);
-                if (previousInBound || thisInBound) gc.lineTo(point.getX(), point.getY());
-                else gc.moveTo(point.getX(), point.getY());
-                previousInBound = thisInBound;
-            }
-            gc.stroke();
-        }
+        int[] starts = sky.asterismStarts();
+        int drawn = asterismRenderer.draw(gc, starts, sky.asterismStarIndices(), transformedPoints,
+                canvas.getWidth(), canvas.getHeight());
+        RenderStatistics.count(RenderStatistics.Counter.ASTERISMS_DRAWN, drawn);
+        RenderStatistics.count(RenderStatistics.Counter.ASTERISMS_CULLED, starts.length - 1 - drawn);
     }
 
     /**
@@ -159,16 +327,15 @@ public class SkyCanvasPainter {
      * @param planeToCanvas Transform used
      */
     public void drawPlanets(ObservedSky sky, StereographicProjection projection, Transform planeToCanvas){
+        GraphicsContext gc = layers.get(SkyLayer.SOLAR_SYSTEM);
         List<Planet> planets = sky.planets();
         double[] stereoPoints = new double[sky.planetCoordinates().length];
         planeToCanvas.transform2DPoints(sky.planetCoordinates(), 0, stereoPoints, 0, planets.size());
+        double diameterScale = diameterScale(projection, planeToCanvas);
         for (int i = 0; i < planets.size(); i++) {
             Point2D coord = new Point2D(stereoPoints[2 * i],stereoPoints[2 * i + 1]);
-            double diameter = getMagnitudeBasedCelestialObjectDiameter(planets.get(i), projection, planeToCanvas);
-            drawCelestialObject(coord, planeToCanvas, Color.LIGHTGRAY, diameter);
-            if (indicatorIsOn.get() && indicatedObjectName.get().equals(planets.get(i).name())) {
-                drawIndicator(coord, diameter);
-            }
+            double diameter = CelestialObject.diameterFactor(planets.get(i).magnitude()) * diameterScale;
+            drawCelestialObject(gc, coord, Color.LIGHTGRAY, diameter);
         }
     }
 
@@ -179,42 +346,32 @@ public class SkyCanvasPainter {
      * @param planeToCanvas Transform used
      */
     public void drawSun(ObservedSky sky, StereographicProjection projection, Transform planeToCanvas){
+        GraphicsContext gc = layers.get(SkyLayer.SOLAR_SYSTEM);
         final double sunDiameter = deltaTransform(planeToCanvas, projection.applyToAngle(sky.sun().angularSize()));
         CartesianCoordinates sunPosition = sky.sunPosition();
         Point2D sunPositionOnCanvas = planeToCanvas.transform(sunPosition.x(), sunPosition.y());
         double haloDiameter = sunDiameter * 3000;
-        Color inside = BlackBodyColor.colorForTemperature(dayLightFactor > 0.05 ?  (int) (20000 * dayLightFactor) : (int) (20000 * 0.05));
-        Color outside = BlackBodyColor.colorForTemperature(dayLightFactor > 0.05 ?  (int) (40000 * dayLightFactor) : (int) (40000 * 0.05));
 
         /*
         BONUS
          */
 
-        if(isRealisticSunEnabled()){
+        //Gradients of the halo only depend on the time of day, they are cached and fill the oval they are drawn in
+        if(isRealisticSunEnabled() && quality.get().simplifiesSunGradient()){
+            //Only the bright core of the halo, the rest of it is almost transparent
+            double coreRadius = haloDiameter * 0.03;
+            gc.setFill(skyGlow.haloCore());
+            gc.fillOval(sunPositionOnCanvas.getX()-coreRadius, sunPositionOnCanvas.getY()-coreRadius, 2 * coreRadius, 2 * coreRadius);
+        }else if(isRealisticSunEnabled()){
             //Sun light halo that depends on the time of day
-            RadialGradient sunGradient = new RadialGradient(
-                    0,
-                    0,
-                    sunPositionOnCanvas.getX(),
-                    sunPositionOnCanvas.getY(),
-                    haloDiameter,
-                    false,
-                    CycleMethod.NO_CYCLE,
-                    new Stop(0, inside.deriveColor(1,0.7,5 * skyBrightnessFactor, skyBrightnessFactor)),
-                    new Stop( 0.03, outside.deriveColor(1,0.5,1,skyBrightnessFactor*0.01)),
-                    new Stop(1, Color.DEEPSKYBLUE.deriveColor(1, 0, 0, 0))
-            );
-            gc.setFill(sunGradient);
+            gc.setFill(skyGlow.halo());
             gc.fillOval(sunPositionOnCanvas.getX()-haloDiameter/2, sunPositionOnCanvas.getY()-haloDiameter/2, haloDiameter, haloDiameter);
         }
 
         //Default rendering options with some extra color depending on time of day
-        drawCelestialObject(sunPositionOnCanvas, planeToCanvas,outside.deriveColor(1,1,1,0.25),  sunDiameter*2.2 );
-        drawCelestialObject(sunPositionOnCanvas, planeToCanvas,Color.YELLOW,   sunDiameter + 2 );
-        drawCelestialObject(sunPositionOnCanvas, planeToCanvas,Color.WHITE,  sunDiameter );
-        if (indicatorIsOn.get() && indicatedObjectName.get().equals(sky.sun().name())) {
-            drawIndicator(sunPositionOnCanvas, sunDiameter);
-        }
+        drawCelestialObject(gc, sunPositionOnCanvas, skyGlow.corona(),  sunDiameter*2.2 );
+        drawCelestialObject(gc, sunPositionOnCanvas, Color.YELLOW,   sunDiameter + 2 );
+        drawCelestialObject(gc, sunPositionOnCanvas, Color.WHITE,  sunDiameter );
     }
 
     /**
@@ -227,11 +384,8 @@ public class SkyCanvasPainter {
         final double moonDiameter = deltaTransform(planeToCanvas, projection.applyToAngle(sky.moon().angularSize()));
         Point2D moonCoordinates = new Point2D(sky.moonPosition().x(), sky.moonPosition().y());
         Point2D planePoint = planeToCanvas.transform(moonCoordinates);
-        drawCelestialObject(planePoint, planeToCanvas, Color.WHITE,
+        drawCelestialObject(layers.get(SkyLayer.SOLAR_SYSTEM), planePoint, Color.WHITE,
                 moonDiameter);
-        if (indicatorIsOn.get() && indicatedObjectName.get().equals(sky.moon().name())) {
-            drawIndicator(planePoint, moonDiameter);
-        }
     }
 
     /**
@@ -240,19 +394,18 @@ public class SkyCanvasPainter {
      * @param planeToCanvas Transform used
      */
     public void drawHorizon(StereographicProjection projection, Transform planeToCanvas){
+        GraphicsContext gc = layers.get(SkyLayer.GUIDES);
+        //The geometry is only computed again when the projection center, the transform or the canvas change
+        guideGeometry = GuideGeometry.of(guideGeometry, projection, planeToCanvas, canvas.getWidth());
+        GuideGeometry guides = guideGeometry;
+
         gc.setStroke(Color.RED);
         gc.setLineWidth(2);
-        CartesianCoordinates fromProjection = projection.circleCenterForParallel(HorizontalCoordinates.ofDeg(0,0));
-        double projRadius = Math.abs(projection.circleRadiusForParallel(HorizontalCoordinates.ofDeg(0,0)));
-        Point2D horizonCenter = planeToCanvas.transform(fromProjection.x() , fromProjection.y());
-        double radius = planeToCanvas.deltaTransform(projRadius, 0).getX();
-        gc.strokeOval(horizonCenter.getX() - radius, horizonCenter.getY() - radius ,radius * 2, radius * 2);
+        strokeCircle(gc, guides.circleCenterX(0), guides.circleCenterY(0), guides.circleRadius(0));
 
         gc.setFill(Color.RED);
-        for (HorizontalCoordinates.OCTANT octant: HorizontalCoordinates.OCTANT.values()) {
-            CartesianCoordinates octantCartesian = projection.apply(HorizontalCoordinates.ofDeg(octant.getOctantAngle(),-0.5));
-            Point2D octantCoord = planeToCanvas.transform(octantCartesian.x(), octantCartesian.y());
-            gc.fillText(octant.name(), octantCoord.getX(), octantCoord.getY() + Font.getDefault().getSize());
+        for (int i = 0; i < guides.octants().size(); i++) {
+            gc.fillText(guides.octants().get(i).name(), guides.octantLabelX(i), guides.octantLabelY(i) + Font.getDefault().getSize());
         }
 
         /*
@@ -261,25 +414,165 @@ public class SkyCanvasPainter {
 
         if(altitudeLinesEnabled.get()) {
             //Draw guides for altitude
-            double xAltPos = canvas.getWidth() / 2;
             gc.setStroke(Color.PALEGREEN.deriveColor(1, 1, 1, 0.5));
             gc.setFill(Color.PALEGREEN.deriveColor(1, 2, 1, 0.8));
             gc.setLineWidth(1);
-            gc.fillText("0°", xAltPos, planeToCanvas.transform(0, projection.apply(HorizontalCoordinates.of(projection.getCenter().az(), Angle.ofDeg(0.5))).y()).getY());
-            for (int alt = -50; alt < 90; alt = alt + 10) {
-                if (alt == 0) continue; //Horizon is a special case
-                gc.fillText(alt + "°", xAltPos, planeToCanvas.transform(0, projection.apply(HorizontalCoordinates.of(projection.getCenter().az(), Angle.ofDeg(alt + 0.5))).y()).getY());
-                CartesianCoordinates circCenter = projection.circleCenterForParallel(HorizontalCoordinates.ofDeg(0, alt));
-                double circRadius = Math.abs(projection.circleRadiusForParallel(HorizontalCoordinates.ofDeg(0, alt)));
-                Point2D altCenter = planeToCanvas.transform(circCenter.x(), circCenter.y());
-                double altRadius = planeToCanvas.deltaTransform(circRadius, 0).getX();
-                gc.strokeOval(altCenter.getX() - altRadius, altCenter.getY() - altRadius, altRadius * 2, altRadius * 2);
+            gc.fillText("0°", guides.circleLabelX(0), guides.circleLabelY(0));
+            //Horizon is a special case, it is the first circle
+            for (int i = 1; i < guides.circleCount(); i++) {
+                gc.fillText(guides.circleAltitudeDeg(i) + "°", guides.circleLabelX(i), guides.circleLabelY(i));
+                strokeCircle(gc, guides.circleCenterX(i), guides.circleCenterY(i), guides.circleRadius(i));
             }
         }
 
     }
 
+    private void strokeCircle(GraphicsContext gc, double centerX, double centerY, double radius) {
+        gc.strokeOval(centerX - radius, centerY - radius, radius * 2, radius * 2);
+    }
+
+    /**
+     * draws the labels, the indicator around the indicated object and the render statistics, if they are displayed
+     * @param sky observed sky
+     * @param projection stereographic projection used
+     * @param planeToCanvas Transform used
+     */
+    public void drawOverlay(ObservedSky sky, StereographicProjection projection, Transform planeToCanvas) {
+        if (labelsEnabled.get()) {
+            long start = RenderStatistics.start();
+            drawLabels(sky, projection, planeToCanvas);
+            RenderStatistics.stop(RenderStatistics.Stage.LABELS, start);
+        }
+        if (statisticsEnabled.get() && RenderStatistics.ENABLED) drawStatistics();
+
+        String name = indicatedObjectName.get();
+        if (!indicatorIsOn.get() || name == null) return;
+
+        if (starsEnabled.get()) {
+            Bounds safeDisplayBounds = new BoundingBox(-200,-200, canvas.getWidth()+400, canvas.getHeight()+400);
+            List<Star> stars = sky.stars();
+            double[] starCoordinates = sky.starCoordinates();
+            for (int i = 0; i < stars.size(); i++) {
+                if (!name.equals(stars.get(i).name())) continue;
+                Point2D p = planeToCanvas.transform(starCoordinates[2 * i], starCoordinates[2 * i + 1]);
+                if (safeDisplayBounds.contains(p))
+                    drawIndicator(p, sky.starDiameterFactor(i) * diameterScale(projection, planeToCanvas));
+            }
+        }
+        if (planetsEnabled.get()) {
+            List<Planet> planets = sky.planets();
+            double[] planetCoordinates = sky.planetCoordinates();
+            for (int i = 0; i < planets.size(); i++) {
+                if (!name.equals(planets.get(i).name())) continue;
+                drawIndicator(planeToCanvas.transform(planetCoordinates[2 * i], planetCoordinates[2 * i + 1]),
+                        CelestialObject.diameterFactor(planets.get(i).magnitude()) * diameterScale(projection, planeToCanvas));
+            }
+        }
+        if (sunEnabled.get() && name.equals(sky.sun().name())) {
+            drawIndicator(planeToCanvas.transform(sky.sunPosition().x(), sky.sunPosition().y()),
+                    deltaTransform(planeToCanvas, projection.applyToAngle(sky.sun().angularSize())));
+        }
+        if (moonEnabled.get() && name.equals(sky.moon().name())) {
+            drawIndicator(planeToCanvas.transform(sky.moonPosition().x(), sky.moonPosition().y()),
+                    deltaTransform(planeToCanvas, projection.applyToAngle(sky.moon().angularSize())));
+        }
+    }
+
+    //Labels bright stars and planets from the brightest to the faintest, labels overlapping brighter ones are dropped
+    private void drawLabels(ObservedSky sky, StereographicProjection projection, Transform planeToCanvas) {
+        GraphicsContext gc = layers.get(SkyLayer.OVERLAY);
+        labelPlacer.reset(canvas.getWidth(), canvas.getHeight());
+        gc.setFill(Color.LIGHTSTEELBLUE);
+        gc.setTextBaseline(VPos.CENTER);
+
+        List<Star> stars = sky.stars();
+        double[] starCoordinates = starsEnabled.get() ? sky.starCoordinates() : null;
+        List<Planet> planets = sky.planets();
+        double[] planetCoordinates = sky.planetCoordinates();
+        List<Integer> planetsByMagnitude = new ArrayList<>();
+        for (int i = 0; planetsEnabled.get() && i < planets.size(); i++) planetsByMagnitude.add(i);
+        planetsByMagnitude.sort(Comparator.comparingDouble(i -> planets.get(i).magnitude()));
+        double diameterScale = diameterScale(projection, planeToCanvas);
+
+        int rank = 0;
+        int planet = 0;
+        while (true) {
+            //Next star to label, if any
+            int star = -1;
+            while (starCoordinates != null && rank < stars.size()) {
+                int index = sky.starIndexByMagnitude(rank);
+                if (stars.get(index).magnitude() > LABEL_LIMITING_MAGNITUDE) {
+                    rank = stars.size();
+                } else if (stars.get(index).name().startsWith("?")) {
+                    ++rank;
+                } else {
+                    star = index;
+                    break;
+                }
+            }
+            int nextPlanet = planet < planetsByMagnitude.size() ? planetsByMagnitude.get(planet) : -1;
+            boolean planetFirst = nextPlanet >= 0
+                    && (star < 0 || planets.get(nextPlanet).magnitude() <= stars.get(star).magnitude());
+            if (planetFirst) {
+                ++planet;
+                placeLabel(gc, planets.get(nextPlanet).name(), planetCoordinates[2 * nextPlanet],
+                        planetCoordinates[2 * nextPlanet + 1],
+                        CelestialObject.diameterFactor(planets.get(nextPlanet).magnitude()) * diameterScale,
+                        planeToCanvas);
+            } else if (star >= 0) {
+                ++rank;
+                placeLabel(gc, stars.get(star).name(), starCoordinates[2 * star], starCoordinates[2 * star + 1],
+                        sky.starDiameterFactor(star) * diameterScale, planeToCanvas);
+            } else {
+                break;
+            }
+        }
+        gc.setTextBaseline(VPos.BASELINE);
+    }
+
+    private void placeLabel(GraphicsContext gc, String name, double planeX, double planeY, double diameter,
+                            Transform planeToCanvas) {
+        Point2D p = planeToCanvas.transform(planeX, planeY);
+        if (p.getX() < 0 || p.getX() > canvas.getWidth() || p.getY() < 0 || p.getY() > canvas.getHeight()) return;
+        double width = labelWidths.computeIfAbsent(name, n -> {
+            labelMeasure.setText(n);
+            return labelMeasure.getLayoutBounds().getWidth();
+        });
+        double offset = diameter / 2 + LABEL_GAP;
+        double top = p.getY() - labelHeight / 2;
+        //Labels go to the right of their object, or to its left if there is no room
+        if (labelPlacer.tryPlace(p.getX() + offset, top, width, labelHeight)) {
+            gc.fillText(name, p.getX() + offset, p.getY());
+        } else if (labelPlacer.tryPlace(p.getX() - offset - width, top, width, labelHeight)) {
+            gc.fillText(name, p.getX() - offset - width, p.getY());
+        }
+    }
+
+    private void drawStatistics() {
+        RenderStatistics.Report report = RenderStatistics.latest();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "FPS %.1f", report.fps()));
+        for (RenderStatistics.Stage stage : RenderStatistics.Stage.ALL) {
+            double ms = report.averageMs(stage);
+            lines.add(Double.isNaN(ms) ? stage.label() + " -" : String.format(Locale.ROOT, "%s %.2f ms", stage.label(), ms));
+        }
+        lines.add(String.format(Locale.ROOT, "Stars %d drawn / %d culled",
+                report.count(RenderStatistics.Counter.STARS_DRAWN), report.count(RenderStatistics.Counter.STARS_CULLED)));
+        lines.add(String.format(Locale.ROOT, "Asterisms %d drawn / %d culled",
+                report.count(RenderStatistics.Counter.ASTERISMS_DRAWN), report.count(RenderStatistics.Counter.ASTERISMS_CULLED)));
+
+        GraphicsContext gc = layers.get(SkyLayer.OVERLAY);
+        double lineHeight = Font.getDefault().getSize() * 1.3;
+        gc.setFill(Color.BLACK.deriveColor(1, 1, 1, 0.6));
+        gc.fillRect(5, 5, 230, lineHeight * lines.size() + 10);
+        gc.setFill(Color.WHITE);
+        for (int i = 0; i < lines.size(); i++) {
+            gc.fillText(lines.get(i), 12, 10 + lineHeight * (i + 1) - lineHeight * 0.3);
+        }
+    }
+
     private void drawIndicator(Point2D planePoint, double diameter) {
+        GraphicsContext gc = layers.get(SkyLayer.OVERLAY);
         gc.setStroke(Color.LIGHTGREEN);
         gc.strokeOval(planePoint.getX()-(diameter+ DIAMETER_EXTENSION_FOR_INDICATOR)/2, planePoint.getY()-(diameter+DIAMETER_EXTENSION_FOR_INDICATOR)/2, diameter+DIAMETER_EXTENSION_FOR_INDICATOR, diameter+DIAMETER_EXTENSION_FOR_INDICATOR);
     }
@@ -291,31 +584,73 @@ public class SkyCanvasPainter {
      * @param planeToCanvas Transform used
      */
     public void draw(ObservedSky sky, StereographicProjection projection, Transform planeToCanvas){
+        invalidateAll();
+        drawInvalidated(sky, projection, planeToCanvas);
+    }
+
+    /**
+     * repaints the layers invalidated since they were last painted
+     * @param sky observed sky
+     * @param projection stereographic projection used
+     * @param planeToCanvas Transform used
+     */
+    public void drawInvalidated(ObservedSky sky, StereographicProjection projection, Transform planeToCanvas){
+        if (invalidatedLayers.isEmpty()) return;
+        if (singleCanvas) invalidateAll();
 
         /*
         BONUS
          */
 
-        //Calculate time of day factors depending on the altitude of the sun in the sky
-        dayLightFactor = Math.max(Math.PI / 4  * projection.inverseApply(sky.sunPosition()).alt(), 0);
-        if (projection.inverseApply(sky.sunPosition()).alt() > 0.1) skyBrightnessFactor = 1;
-        else if (projection.inverseApply(sky.sunPosition()).alt() <= 0.1 && projection.inverseApply(sky.sunPosition()).alt() >= -0.3) skyBrightnessFactor = (projection.inverseApply(sky.sunPosition()).alt() + 0.3) * 2.5;
-        else skyBrightnessFactor = 0;
-
-        clear();
-        //Only draw enabled objects
-        if(starsEnabled.get()) drawStars(sky, projection, planeToCanvas);
-        if(planetsEnabled.get()) drawPlanets(sky, projection, planeToCanvas);
-
-        if (isRealisticSunEnabled()) {
-            //Simulate sky color (over stars and planets, but with a variable opacity)
-            gc.setFill(BlackBodyColor.colorForTemperature(dayLightFactor > 0.03 ?  (int) (40000 * dayLightFactor) : (int) (40000 * 0.03)).deriveColor(1, 1.1, skyBrightnessFactor, skyBrightnessFactor));
-            gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        //Appearance of the atmosphere depending on the altitude of the sun in the sky
+        skyGlow = SkyGlow.forSunAltitude(projection.inverseApply(sky.sunPosition()).alt());
+
+        //The Milky Way moves with the stars, but is only reprojected once it moved enough to be visible
+        if (milkyWayEnabled.get() && invalidatedLayers.contains(SkyLayer.STARS)
+                && milkyWayRenderer.isStale(sky, planeToCanvas, canvas.getWidth(), canvas.getHeight())) {
+            invalidatedLayers.add(SkyLayer.BACKGROUND);
         }
 
-        if(sunEnabled.get()) drawSun(sky, projection, planeToCanvas);
-        if(moonEnabled.get()) drawMoon(sky, projection, planeToCanvas);
-        drawHorizon(projection, planeToCanvas);
+        for (SkyLayer layer : SkyLayer.ALL) {
+            if (!invalidatedLayers.contains(layer)) continue;
+            clearLayer(layer);
+            //Only draw enabled objects
+            switch (layer) {
+                case BACKGROUND:
+                    drawBackground();
+                    long milkyWayStart = RenderStatistics.start();
+                    if (milkyWayEnabled.get()) drawMilkyWay(sky, planeToCanvas);
+                    RenderStatistics.stop(RenderStatistics.Stage.MILKY_WAY, milkyWayStart);
+                    break;
+                case STARS:
+                    if(starsEnabled.get()) drawStars(sky, projection, planeToCanvas);
+                    break;
+                case SOLAR_SYSTEM:
+                    long start = RenderStatistics.start();
+                    if(planetsEnabled.get()) drawPlanets(sky, projection, planeToCanvas);
+                    start = RenderStatistics.lap(RenderStatistics.Stage.PLANETS, start);
+                    if (isRealisticSunEnabled()) {
+                        //Simulate sky color (over stars and planets, but with a variable opacity)
+                        GraphicsContext gc = layers.get(SkyLayer.SOLAR_SYSTEM);
+                        gc.setFill(skyGlow.skyTint());
+                        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                    }
+                    if(sunEnabled.get()) drawSun(sky, projection, planeToCanvas);
+                    start = RenderStatistics.lap(RenderStatistics.Stage.SUN, start);
+                    if(moonEnabled.get()) drawMoon(sky, projection, planeToCanvas);
+                    RenderStatistics.stop(RenderStatistics.Stage.MOON, start);
+                    break;
+                case GUIDES:
+                    long guidesStart = RenderStatistics.start();
+                    drawHorizon(projection, planeToCanvas);
+                    RenderStatistics.stop(RenderStatistics.Stage.HORIZON, guidesStart);
+                    break;
+                case OVERLAY:
+                    drawOverlay(sky, projection, planeToCanvas);
+                    break;
+            }
+        }
+        invalidatedLayers.clear();
     }
 
 
@@ -324,13 +659,12 @@ public class SkyCanvasPainter {
     PRIVATE UTILITY CLASSES
      */
 
-    private double getMagnitudeBasedCelestialObjectDiameter(CelestialObject celestialObject, StereographicProjection projection, Transform planeToCanvas){
-        final double mag = MAGNITUDE_INTERVAL.clip(celestialObject.magnitude());
-        final double factor = (99-17*mag) / (140);
-        return deltaTransform(planeToCanvas, factor * projection.applyToAngle(Angle.ofDeg(0.5)));
+    //Diameter on the canvas of a disc of 0.5°, multiplied by the diameter factor of an object to get its diameter
+    private double diameterScale(StereographicProjection projection, Transform planeToCanvas){
+        return deltaTransform(planeToCanvas, projection.applyToAngle(Angle.ofDeg(0.5)));
     }
 
-    private void drawCelestialObject(Point2D planeCoordinates, Transform planeToCanvas, Color color,
+    private void drawCelestialObject(GraphicsContext gc, Point2D planeCoordinates, Color color,
                                      double diameter) {
         gc.setFill(color);
         gc.fillOval(planeCoordinates.getX()-diameter/2, planeCoordinates.getY()-diameter/2, diameter, diameter);
@@ -496,6 +830,102 @@ public class SkyCanvasPainter {
         return realisticSunEnabled;
     }
 
+    /**
+     * Checks if pixel buffer rendering of stars is enabled
+     * @return true if pixel buffer rendering of stars is enabled
+     */
+    public boolean isPixelBufferStarsEnabled() {
+        return pixelBufferStarsEnabled.get();
+    }
+
+    /**
+     * Returns property concerning pixel buffer rendering of stars
+     * @return pixel buffer stars enabled property
+     */
+    public BooleanProperty pixelBufferStarsEnabledProperty() {
+        return pixelBufferStarsEnabled;
+    }
+
+    /**
+     * Set pixel buffer rendering of stars enabled
+     * @param pixelBufferStarsEnabled new value
+     */
+    public void setPixelBufferStarsEnabled(boolean pixelBufferStarsEnabled) {
+        this.pixelBufferStarsEnabled.set(pixelBufferStarsEnabled);
+    }
+
+    /**
+     * Checks if labels are enabled
+     * @return true if labels are enabled
+     */
+    public boolean isLabelsEnabled() {
+        return labelsEnabled.get();
+    }
+
+    /**
+     * Returns property concerning labels
+     * @return labels enabled property
+     */
+    public BooleanProperty labelsEnabledProperty() {
+        return labelsEnabled;
+    }
+
+    /**
+     * Set labels enabled
+     * @param labelsEnabled new value
+     */
+    public void setLabelsEnabled(boolean labelsEnabled) {
+        this.labelsEnabled.set(labelsEnabled);
+    }
+
+    /**
+     * Checks if the Milky Way is enabled
+     * @return true if the Milky Way is enabled
+     */
+    public boolean isMilkyWayEnabled() {
+        return milkyWayEnabled.get();
+    }
+
+    /**
+     * Returns property concerning the Milky Way
+     * @return Milky Way enabled property
+     */
+    public BooleanProperty milkyWayEnabledProperty() {
+        return milkyWayEnabled;
+    }
+
+    /**
+     * Set Milky Way enabled
+     * @param milkyWayEnabled new value
+     */
+    public void setMilkyWayEnabled(boolean milkyWayEnabled) {
+        this.milkyWayEnabled.set(milkyWayEnabled);
+    }
+
+    /**
+     * Checks if the render statistics overlay is enabled, statistics are only collected if RenderStatistics.ENABLED
+     * @return true if the render statistics overlay is enabled
+     */
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled.get();
+    }
+
+    /**
+     * Returns property concerning the render statistics overlay
+     * @return statistics enabled property
+     */
+    public BooleanProperty statisticsEnabledProperty() {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Set render statistics overlay enabled
+     * @param statisticsEnabled new value
+     */
+    public void setStatisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled.set(statisticsEnabled);
+    }
+
     /**
      * Checks if alt lines are enabled
      * @return true if alt lines are enabled
@@ -512,13 +942,38 @@ public class SkyCanvasPainter {
         return altitudeLinesEnabled;
     }
 
+    /**
+     * Returns the current render quality
+     * @return render quality
+     */
+    public RenderQuality getQuality() {
+        return quality.get();
+    }
+
+    /**
+     * Returns property concerning render quality, lowering it gives up details on top of the rendering options
+     * @return render quality property
+     */
+    public ObjectProperty<RenderQuality> qualityProperty() {
+        return quality;
+    }
+
+    /**
+     * Set render quality
+     * @param quality new value
+     */
+    public void setQuality(RenderQuality quality) {
+        this.quality.set(quality);
+    }
+
     /**
      * Returns all rendering properties
      * @return list of boolean rendering properties
      */
     public List<Property<Boolean>> getRenderingProperties(){
         return List.of(starsEnabled, asterismsEnabled, sunEnabled, moonEnabled, planetsEnabled,
-                realisticSkyEnabled, realisticSunEnabled, altitudeLinesEnabled, indicatorIsOn);
+                realisticSkyEnabled, realisticSunEnabled, pixelBufferStarsEnabled, altitudeLinesEnabled, indicatorIsOn,
+                statisticsEnabled, labelsEnabled, milkyWayEnabled);
     }
 
     /**
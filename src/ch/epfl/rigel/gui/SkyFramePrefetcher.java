@@ -0,0 +1,362 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.astronomy.ObservedSky;
+import ch.epfl.rigel.astronomy.SiderealTime;
+import ch.epfl.rigel.astronomy.StarCatalogue;
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.coordinates.StereographicProjection;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Sky frame prefetcher
+ *
+ * While the time animator runs, the simulated time of every upcoming frame is known in advance from the accelerator
+ * and the start instant. The prefetcher speculatively computes the observed skies of the next frames on a worker
+ * pool, so that they are ready when the animation reaches them. All methods must be called from the JavaFX
+ * application thread.
+ *
+ * When interpolation is enabled, only one frame out of a few (the keyframes) is computed, the frames in between are
+ * interpolated from the two keyframes surrounding them. Keyframes are spaced so that the interpolation error stays
+ * below half a pixel: when the animation goes too fast for that, every frame is a keyframe.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class SkyFramePrefetcher {
+
+    /**
+     * Real time duration of a frame (in nanoseconds), animation times are sampled on this grid
+     */
+    public static final long FRAME_DURATION = 1_000_000_000L / 60;
+    private static final int DEFAULT_LOOK_AHEAD = 8;
+    private static final int DEFAULT_KEYFRAME_INTERVAL = 6;
+    //Largest interpolation error (in pixels) allowed between two keyframes
+    private static final double MAX_INTERPOLATION_ERROR = 0.5;
+
+    private final StarCatalogue catalogue;
+    private final ExecutorService pool;
+    private final int lookAhead;
+    private final Map<Long, Frame> frames;
+    private final BooleanProperty interpolationEnabled;
+    private int keyframeInterval;
+    private DoubleSupplier pixelsPerRadian;
+
+    private GeographicCoordinates where;
+    private StereographicProjection projection;
+    private TimeAccelerator accelerator;
+    private ZonedDateTime initialDateTime;
+    private long currentFrame;
+    //Number of frames from one keyframe to the next, 1 when frames are not interpolated
+    private int keyframeSpacing;
+    //Number of frames from one rendered frame to the next, when frames are skipped
+    private int frameStride;
+    private boolean running;
+
+    /**
+     * Sky frame prefetcher constructor
+     * @param catalogue catalogue of stars and asterisms
+     * @param where initial position of observation
+     * @param projection initial projection
+     */
+    public SkyFramePrefetcher(StarCatalogue catalogue, GeographicCoordinates where, StereographicProjection projection) {
+        this(catalogue, where, projection, DEFAULT_LOOK_AHEAD);
+    }
+
+    /**
+     * Sky frame prefetcher constructor
+     * @param catalogue catalogue of stars and asterisms
+     * @param where initial position of observation
+     * @param projection initial projection
+     * @param lookAhead number of frames computed in advance
+     * @throws IllegalArgumentException if lookAhead is not strictly positive
+     */
+    public SkyFramePrefetcher(StarCatalogue catalogue, GeographicCoordinates where, StereographicProjection projection,
+                              int lookAhead) {
+        if (lookAhead <= 0) throw new IllegalArgumentException("Look ahead must be strictly positive");
+        this.catalogue = catalogue;
+        this.where = where;
+        this.projection = projection;
+        this.lookAhead = lookAhead;
+        this.frames = new HashMap<>();
+        this.interpolationEnabled = new SimpleBooleanProperty(false);
+        this.keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+        this.keyframeSpacing = 1;
+        this.frameStride = 1;
+        this.pixelsPerRadian = () -> Double.POSITIVE_INFINITY;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "Rigel sky frame prefetcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        interpolationEnabled.addListener((p, o, n) -> restart());
+    }
+
+    /**
+     * Returns the simulated time of the given frame of an animation
+     * @param accelerator accelerator of the animation
+     * @param initialDateTime simulated time at the start of the animation
+     * @param frame index of the frame since the start of the animation
+     * @return simulated time of the frame
+     */
+    public static ZonedDateTime frameTime(TimeAccelerator accelerator, ZonedDateTime initialDateTime, long frame) {
+        return accelerator.adjust(initialDateTime, frame * FRAME_DURATION);
+    }
+
+    /**
+     * Returns an upper bound of the error made by interpolating the position of an object linearly between two
+     * keyframes. Objects move with the rotation of the sky, along arcs of circle: between keyframes spaced by a
+     * duration t, an object rotates by at most ωt, and the interpolated chord is at most (ωt)² / 8 radians away from
+     * the arc
+     * @param spacing simulated time between two keyframes
+     * @param pixelsPerRadian maximum on-screen displacement (in pixels) of a point of the sky rotated by one radian
+     * @return upper bound of the interpolation error (in pixels)
+     */
+    public static double interpolationErrorBound(Duration spacing, double pixelsPerRadian) {
+        double angle = SiderealTime.RATE_PER_SECOND * Math.abs(spacing.getSeconds() + spacing.getNano() / 1e9);
+        //Beyond half a turn, the chord does not follow the arc at all
+        return angle >= Math.PI ? Double.POSITIVE_INFINITY : angle * angle / 8 * pixelsPerRadian;
+    }
+
+    /**
+     * Starts prefetching the frames of an animation
+     * @param accelerator accelerator of the animation
+     * @param initialDateTime simulated time at the start of the animation
+     */
+    public void start(TimeAccelerator accelerator, ZonedDateTime initialDateTime) {
+        discardAll();
+        this.accelerator = accelerator;
+        this.initialDateTime = initialDateTime;
+        this.currentFrame = 0;
+        this.running = true;
+        this.keyframeSpacing = keyframeSpacing();
+        schedule();
+    }
+
+    //Largest spacing of keyframes, up to the keyframe interval, keeping the interpolation error small enough
+    private int keyframeSpacing() {
+        if (!interpolationEnabled.get()) return 1;
+        int spacing = keyframeInterval;
+        while (spacing > 1 && interpolationErrorBound(Duration.between(frameTime(accelerator, initialDateTime, 0),
+                frameTime(accelerator, initialDateTime, spacing)), pixelsPerRadian.getAsDouble()) > MAX_INTERPOLATION_ERROR) {
+            --spacing;
+        }
+        return spacing;
+    }
+
+    private void restart() {
+        discardAll();
+        if (!running) return;
+        keyframeSpacing = keyframeSpacing();
+        schedule();
+    }
+
+    /**
+     * Stops prefetching and discards all frames computed in advance
+     */
+    public void stop() {
+        running = false;
+        discardAll();
+    }
+
+    /**
+     * Tells the prefetcher the animation reached the given frame, older frames are discarded and new ones scheduled
+     * @param frame index of the frame reached
+     */
+    public void advanceTo(long frame) {
+        if (!running || frame == currentFrame) return;
+        currentFrame = frame;
+        //The current frame (or the keyframe before it) is kept as it is about to be looked up
+        discardBefore(keyframeBefore(frame));
+        schedule();
+    }
+
+    /**
+     * Tells the prefetcher the animation skipped the given frame, older frames are discarded but no new one is
+     * scheduled, as the frames computed in advance are those which will be rendered
+     * @param frame index of the frame skipped
+     */
+    public void skip(long frame) {
+        if (!running) return;
+        discardBefore(keyframeBefore(frame));
+    }
+
+    private void discardBefore(long frame) {
+        Iterator<Map.Entry<Long, Frame>> it = frames.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Frame> entry = it.next();
+            if (entry.getKey() < frame) {
+                entry.getValue().sky.cancel(false);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Sets the number of frames from one rendered frame to the next, when the animator skips the frames in which the
+     * sky barely moves. Without interpolation, only the frames which will be rendered are then computed in advance
+     * @param frameStride number of frames from one rendered frame to the next
+     * @throws IllegalArgumentException if the stride is not strictly positive
+     */
+    public void setFrameStride(int frameStride) {
+        if (frameStride <= 0) throw new IllegalArgumentException("Frame stride must be strictly positive");
+        this.frameStride = frameStride;
+    }
+
+    /**
+     * Changes the view for which frames are computed, all frames computed for the previous view are discarded
+     * @param where new position of observation
+     * @param projection new projection
+     */
+    public void setView(GeographicCoordinates where, StereographicProjection projection) {
+        if (where == this.where && projection == this.projection) return;
+        this.where = where;
+        this.projection = projection;
+        restart();
+    }
+
+    /**
+     * Returns the observed sky computed in advance for the given parameters, if it is ready
+     * @param when time of observation
+     * @param where position of observation
+     * @param projection projection used
+     * @return the prefetched observed sky, or an empty optional if none is ready for these parameters
+     */
+    public Optional<ObservedSky> lookup(ZonedDateTime when, GeographicCoordinates where, StereographicProjection projection) {
+        if (!running || where != this.where || projection != this.projection) return Optional.empty();
+        long keyframe = keyframeBefore(currentFrame);
+        if (keyframe == currentFrame) {
+            Frame frame = frames.get(currentFrame);
+            return frame != null && frame.when.isEqual(when) ? frame.sky() : Optional.empty();
+        }
+
+        //Frames between keyframes are interpolated from the keyframes surrounding them
+        Frame from = frames.get(keyframe);
+        Frame to = frames.get(keyframe + keyframeSpacing);
+        if (from == null || to == null || !frameTime(accelerator, initialDateTime, currentFrame).isEqual(when)
+                || interpolationErrorBound(Duration.between(from.when, to.when), pixelsPerRadian.getAsDouble())
+                > MAX_INTERPOLATION_ERROR) return Optional.empty();
+        Optional<ObservedSky> fromSky = from.sky();
+        Optional<ObservedSky> toSky = to.sky();
+        if (fromSky.isEmpty() || toSky.isEmpty()) return Optional.empty();
+        return Optional.of(ObservedSky.interpolate(fromSky.get(), toSky.get(), when));
+    }
+
+    private long keyframeBefore(long frame) {
+        return frame - Math.floorMod(frame, keyframeSpacing);
+    }
+
+    private void schedule() {
+        GeographicCoordinates where = this.where;
+        StereographicProjection projection = this.projection;
+        long keyframe = keyframeBefore(currentFrame);
+        //The keyframe before the current frame is needed to interpolate it, even if it was not computed in advance
+        long first = keyframeSpacing > 1 ? keyframe : keyframe + frameStride;
+        //Keyframes are needed around every frame, only frames which are not interpolated can be strided
+        int step = keyframeSpacing > 1 ? keyframeSpacing : frameStride;
+        for (long frame = first; frame <= keyframe + (long) lookAhead * step; frame += step) {
+            if (frames.containsKey(frame)) continue;
+            ZonedDateTime when = frameTime(accelerator, initialDateTime, frame);
+            frames.put(frame, new Frame(when, pool.submit(() -> {
+                long start = RenderStatistics.start();
+                ObservedSky sky = new ObservedSky(when, where, projection, catalogue);
+                RenderStatistics.stop(RenderStatistics.Stage.OBSERVED_SKY, start);
+                return sky;
+            })));
+        }
+    }
+
+    /**
+     * Checks if frames are interpolated between keyframes
+     * @return true if interpolation is enabled
+     */
+    public boolean isInterpolationEnabled() {
+        return interpolationEnabled.get();
+    }
+
+    /**
+     * Returns property concerning interpolation of frames between keyframes
+     * @return interpolation enabled property
+     */
+    public BooleanProperty interpolationEnabledProperty() {
+        return interpolationEnabled;
+    }
+
+    /**
+     * Set interpolation of frames between keyframes enabled
+     * @param interpolationEnabled new value
+     */
+    public void setInterpolationEnabled(boolean interpolationEnabled) {
+        this.interpolationEnabled.set(interpolationEnabled);
+    }
+
+    /**
+     * Returns the largest number of frames from one keyframe to the next
+     * @return keyframe interval
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Sets the largest number of frames from one keyframe to the next, keyframes are closer when the animation goes
+     * too fast to interpolate between them
+     * @param keyframeInterval keyframe interval (1 to compute every frame)
+     * @throws IllegalArgumentException if the interval is not strictly positive
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval <= 0) throw new IllegalArgumentException("Keyframe interval must be strictly positive");
+        this.keyframeInterval = keyframeInterval;
+        restart();
+    }
+
+    /**
+     * Sets the function estimating the maximum on-screen displacement (in pixels) of a point of the sky rotated by
+     * one radian, used to bound the interpolation error
+     * @param pixelsPerRadian maximum on-screen displacement per radian of rotation
+     */
+    public void setPixelsPerRadian(DoubleSupplier pixelsPerRadian) {
+        this.pixelsPerRadian = pixelsPerRadian;
+    }
+
+    private void discardAll() {
+        for (Frame frame : frames.values()) {
+            frame.sky.cancel(false);
+        }
+        frames.clear();
+    }
+
+    private static final class Frame {
+        private final ZonedDateTime when;
+        private final Future<ObservedSky> sky;
+
+        private Frame(ZonedDateTime when, Future<ObservedSky> sky) {
+            this.when = when;
+            this.sky = sky;
+        }
+
+        //Observed sky of the frame, if it is ready
+        private Optional<ObservedSky> sky() {
+            if (!sky.isDone() || sky.isCancelled()) return Optional.empty();
+            try {
+                return Optional.of(sky.get());
+            } catch (InterruptedException | ExecutionException e) {
+                return Optional.empty();
+            }
+        }
+    }
+}
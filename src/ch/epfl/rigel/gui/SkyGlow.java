@@ -0,0 +1,130 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.math.Angle;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.paint.Stop;
+
+/**
+ * Sky glow
+ *
+ * Appearance of the atmosphere lit by the Sun, which only depends on the altitude of the Sun: tint of the sky, color
+ * of the Sun's corona and gradients of its halo. The gradients are proportional, they fill the bounds of the shape
+ * they are drawn in, so that they do not depend on the position of the Sun on the canvas.
+ *
+ * Appearances are computed once per step of altitude and cached, the altitude of the Sun being rounded to the nearest
+ * step: a step changes the temperature of the colors by about half a step of the black body color table.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class SkyGlow {
+
+    private static final double ALTITUDE_STEP_DEG = 0.1;
+    private static final int STEPS = (int) Math.round(180 / ALTITUDE_STEP_DEG);
+    //Hottest temperature of the black body color table, reached by the sky tint from an altitude of 4/π radians
+    //(about 72.9°), the temperature of the tint being 40000 · π/4 · altitude
+    private static final int MAX_TEMPERATURE = 40000;
+    //Cached appearances, indexed by step of altitude from -90°, filled lazily (the appearances are immutable)
+    private static final SkyGlow[] CACHE = new SkyGlow[STEPS + 1];
+
+    private final double dayLightFactor;
+    private final double skyBrightnessFactor;
+    private final Color skyTint;
+    private final Color corona;
+    private final RadialGradient halo;
+    private final RadialGradient haloCore;
+
+    private SkyGlow(double sunAltitude) {
+        //Time of day factors depending on the altitude of the sun in the sky
+        dayLightFactor = Math.max(Math.PI / 4 * sunAltitude, 0);
+        if (sunAltitude > 0.1) skyBrightnessFactor = 1;
+        else if (sunAltitude >= -0.3) skyBrightnessFactor = (sunAltitude + 0.3) * 2.5;
+        else skyBrightnessFactor = 0;
+
+        skyTint = colorForTemperature(40000 * Math.max(dayLightFactor, 0.03))
+                .deriveColor(1, 1.1, skyBrightnessFactor, skyBrightnessFactor);
+        Color inside = colorForTemperature(20000 * Math.max(dayLightFactor, 0.05));
+        Color outside = colorForTemperature(40000 * Math.max(dayLightFactor, 0.05));
+        corona = outside.deriveColor(1, 1, 1, 0.25);
+
+        //The halo spans twice the oval it fills, only its bright core is within the oval of the simplified halo
+        Stop center = new Stop(0, inside.deriveColor(1, 0.7, 5 * skyBrightnessFactor, skyBrightnessFactor));
+        halo = new RadialGradient(0, 0, 0.5, 0.5, 1, true, CycleMethod.NO_CYCLE,
+                center,
+                new Stop(0.03, outside.deriveColor(1, 0.5, 1, skyBrightnessFactor * 0.01)),
+                new Stop(1, Color.DEEPSKYBLUE.deriveColor(1, 0, 0, 0)));
+        haloCore = new RadialGradient(0, 0, 0.5, 0.5, 0.5, true, CycleMethod.NO_CYCLE,
+                center,
+                new Stop(1, outside.deriveColor(1, 0.5, 1, 0)));
+    }
+
+    private static Color colorForTemperature(double temperature) {
+        return BlackBodyColor.colorForTemperature((int) Math.min(temperature, MAX_TEMPERATURE));
+    }
+
+    /**
+     * Returns the appearance of the atmosphere for the given altitude of the Sun
+     * @param sunAltitude altitude of the Sun (in radians)
+     * @return sky glow
+     */
+    public static SkyGlow forSunAltitude(double sunAltitude) {
+        int step = (int) Math.round((Math.toDegrees(sunAltitude) + 90) / ALTITUDE_STEP_DEG);
+        step = Math.max(0, Math.min(STEPS, step));
+        SkyGlow glow = CACHE[step];
+        if (glow == null) {
+            glow = new SkyGlow(Angle.ofDeg(step * ALTITUDE_STEP_DEG - 90));
+            CACHE[step] = glow;
+        }
+        return glow;
+    }
+
+    /**
+     * Returns the day light factor, growing with the altitude of the Sun above the horizon
+     * @return day light factor (0 when the Sun is below the horizon)
+     */
+    public double dayLightFactor() {
+        return dayLightFactor;
+    }
+
+    /**
+     * Returns the brightness of the sky, from 0 at night to 1 in full daylight
+     * @return sky brightness factor
+     */
+    public double skyBrightnessFactor() {
+        return skyBrightnessFactor;
+    }
+
+    /**
+     * Returns the color with which the whole sky is tinted
+     * @return sky tint
+     */
+    public Color skyTint() {
+        return skyTint;
+    }
+
+    /**
+     * Returns the color of the corona drawn around the Sun
+     * @return corona color
+     */
+    public Color corona() {
+        return corona;
+    }
+
+    /**
+     * Returns the gradient of the halo of the Sun, filling an oval centered on the Sun
+     * @return halo gradient
+     */
+    public RadialGradient halo() {
+        return halo;
+    }
+
+    /**
+     * Returns the gradient of the bright core of the halo of the Sun, filling an oval centered on the Sun
+     * @return halo core gradient
+     */
+    public RadialGradient haloCore() {
+        return haloCore;
+    }
+}
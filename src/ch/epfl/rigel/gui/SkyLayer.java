@@ -0,0 +1,20 @@
+package ch.epfl.rigel.gui;
+
+import java.util.List;
+
+/**
+ * Sky layer
+ *
+ * Layers the sky is painted on, from bottom to top. Each layer can be repainted independently of the others.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public enum SkyLayer {
+    BACKGROUND, STARS, SOLAR_SYSTEM, GUIDES, OVERLAY;
+
+    /**
+     * List of all layers, from bottom to top
+     */
+    public static final List<SkyLayer> ALL = List.of(SkyLayer.values());
+}
@@ -0,0 +1,139 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.coordinates.HorizontalCoordinates;
+import ch.epfl.rigel.math.Angle;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Sky view
+ *
+ * Parameters of a view of the sky, as stored in Rigel view files (.rgvf): one value per line, the azimuth and the
+ * altitude of the center of the view (in radians), the field of view (in degrees), the time of observation and the
+ * longitude and latitude of the observer (in radians).
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class SkyView {
+
+    private final HorizontalCoordinates center;
+    private final double fieldOfViewDeg;
+    private final ZonedDateTime when;
+    private final GeographicCoordinates where;
+
+    /**
+     * Sky view constructor
+     * @param center center of the view
+     * @param fieldOfViewDeg field of view (in degrees)
+     * @param when time of observation
+     * @param where position of the observer
+     */
+    public SkyView(HorizontalCoordinates center, double fieldOfViewDeg, ZonedDateTime when, GeographicCoordinates where) {
+        this.center = center;
+        this.fieldOfViewDeg = fieldOfViewDeg;
+        this.when = when;
+        this.where = where;
+    }
+
+    /**
+     * Reads a sky view from a Rigel view file
+     * @param file file to read
+     * @return sky view stored in the file
+     * @throws IOException if the file cannot be read or is not a valid Rigel view file
+     */
+    public static SkyView readFrom(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            HorizontalCoordinates center = HorizontalCoordinates.of(parseDouble(reader.readLine()),
+                    parseDouble(reader.readLine()));
+            double fieldOfViewDeg = parseDouble(reader.readLine());
+            ZonedDateTime when = ZonedDateTime.parse(readLine(reader));
+            GeographicCoordinates where = GeographicCoordinates.ofDeg(Angle.toDeg(parseDouble(reader.readLine())),
+                    Angle.toDeg(parseDouble(reader.readLine())));
+            return new SkyView(center, fieldOfViewDeg, when, where);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IOException("Invalid Rigel view file: " + file, e);
+        }
+    }
+
+    /**
+     * Writes this sky view to a Rigel view file
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(Double.toString(center.az()));
+            writer.newLine();
+            writer.write(Double.toString(center.alt()));
+            writer.newLine();
+            writer.write(Double.toString(fieldOfViewDeg));
+            writer.newLine();
+            writer.write(when.toString());
+            writer.newLine();
+            writer.write(Double.toString(where.lon()));
+            writer.newLine();
+            writer.write(Double.toString(where.lat()));
+        }
+    }
+
+    private static String readLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) throw new IOException("Unexpected end of Rigel view file");
+        return line;
+    }
+
+    private static double parseDouble(String line) throws IOException {
+        if (line == null) throw new IOException("Unexpected end of Rigel view file");
+        return Double.parseDouble(line);
+    }
+
+    /**
+     * Returns the same view at another time of observation
+     * @param when new time of observation
+     * @return view at the given time
+     */
+    public SkyView at(ZonedDateTime when) {
+        return new SkyView(center, fieldOfViewDeg, when, where);
+    }
+
+    /**
+     * Returns the center of the view
+     * @return center of the view
+     */
+    public HorizontalCoordinates center() {
+        return center;
+    }
+
+    /**
+     * Returns the field of view (in degrees)
+     * @return field of view
+     */
+    public double fieldOfViewDeg() {
+        return fieldOfViewDeg;
+    }
+
+    /**
+     * Returns the time of observation
+     * @return time of observation
+     */
+    public ZonedDateTime when() {
+        return when;
+    }
+
+    /**
+     * Returns the position of the observer
+     * @return position of the observer
+     */
+    public GeographicCoordinates where() {
+        return where;
+    }
+}
@@ -0,0 +1,137 @@
+package ch.epfl.rigel.gui;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Arrays;
+
+/**
+ * Star rasterizer
+ *
+ * Rasterizes stars as anti-aliased discs directly into an ARGB pixel buffer with additive blending. The buffer is
+ * pushed to an image once per frame, which is then drawn on the canvas with a single call.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public class StarRasterizer {
+
+    //Discs smaller than a pixel are drawn as a pixel wide disc with a proportionally lower intensity
+    private static final double MIN_RADIUS = 0.5;
+
+    private int width;
+    private int height;
+    private int[] buffer;
+    private WritableImage image;
+
+    /**
+     * Rasterizes the given stars and returns the resulting image, whose pixels outside of the stars are transparent.
+     * The image is reused from one frame to the next and must not be kept
+     * @param width width of the image (in pixels)
+     * @param height height of the image (in pixels)
+     * @param points coordinates of the stars' centers on the canvas (x and y of the first star, then of the second...)
+     * @param diameters diameters of the stars (in pixels)
+     * @param colors colors of the stars (in ARGB format, alpha is ignored)
+     * @param count number of stars to rasterize
+     * @return image of the stars
+     */
+    public Image rasterize(int width, int height, double[] points, double[] diameters, int[] colors, int count) {
+        resize(width, height);
+        Arrays.fill(buffer, 0);
+        rasterizeStars(points, diameters, colors, count);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), buffer, 0, width);
+        return image;
+    }
+
+    /**
+     * Rasterizes the given stars into the buffer, over the whole image
+     * @param points coordinates of the stars' centers on the canvas
+     * @param diameters diameters of the stars (in pixels)
+     * @param colors colors of the stars (in ARGB format)
+     * @param count number of stars to rasterize
+     */
+    protected void rasterizeStars(double[] points, double[] diameters, int[] colors, int count) {
+        for (int i = 0; i < count; ++i) {
+            drawDisc(points[2 * i], points[2 * i + 1], diameters[i], colors[i], 0, 0, width, height);
+        }
+    }
+
+    /**
+     * Adds an anti-aliased disc to the buffer, only touching the pixels inside the given clip rectangle
+     * @param x abscissa of the center of the disc
+     * @param y ordinate of the center of the disc
+     * @param diameter diameter of the disc (in pixels)
+     * @param argb color of the disc
+     * @param clipX0 first column of the clip rectangle (inclusive)
+     * @param clipY0 first row of the clip rectangle (inclusive)
+     * @param clipX1 last column of the clip rectangle (exclusive)
+     * @param clipY1 last row of the clip rectangle (exclusive)
+     */
+    protected final void drawDisc(double x, double y, double diameter, int argb,
+                                  int clipX0, int clipY0, int clipX1, int clipY1) {
+        double radius = diameter / 2;
+        double intensity = 1;
+        if (radius < MIN_RADIUS) {
+            intensity = (radius * radius) / (MIN_RADIUS * MIN_RADIUS);
+            radius = MIN_RADIUS;
+        }
+
+        int x0 = Math.max(clipX0, (int) Math.floor(x - radius));
+        int y0 = Math.max(clipY0, (int) Math.floor(y - radius));
+        int x1 = Math.min(clipX1, (int) Math.ceil(x + radius) + 1);
+        int y1 = Math.min(clipY1, (int) Math.ceil(y + radius) + 1);
+
+        int red = (argb >> 16) & 0xFF;
+        int green = (argb >> 8) & 0xFF;
+        int blue = argb & 0xFF;
+
+        for (int py = y0; py < y1; ++py) {
+            double dy = py + 0.5 - y;
+            int row = py * width;
+            for (int px = x0; px < x1; ++px) {
+                double dx = px + 0.5 - x;
+                //Coverage of the pixel, approximated by its distance to the edge of the disc
+                double coverage = Math.min(1, radius + 0.5 - Math.sqrt(dx * dx + dy * dy));
+                if (coverage <= 0) continue;
+                double weight = coverage * intensity;
+                int alpha = (int) (255 * weight);
+                if (alpha == 0) continue;
+                buffer[row + px] = addPremultiplied(buffer[row + px], alpha,
+                        (int) (red * weight), (int) (green * weight), (int) (blue * weight));
+            }
+        }
+    }
+
+    /**
+     * Returns the width of the current buffer
+     * @return width of the buffer (in pixels)
+     */
+    protected final int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the current buffer
+     * @return height of the buffer (in pixels)
+     */
+    protected final int height() {
+        return height;
+    }
+
+    private static int addPremultiplied(int pixel, int alpha, int red, int green, int blue) {
+        int a = Math.min(255, (pixel >>> 24) + alpha);
+        int r = Math.min(255, ((pixel >> 16) & 0xFF) + red);
+        int g = Math.min(255, ((pixel >> 8) & 0xFF) + green);
+        int b = Math.min(255, (pixel & 0xFF) + blue);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private void resize(int width, int height) {
+        if (image != null && width == this.width && height == this.height) return;
+        this.width = width;
+        this.height = height;
+        this.buffer = new int[width * height];
+        this.image = new WritableImage(width, height);
+    }
+}
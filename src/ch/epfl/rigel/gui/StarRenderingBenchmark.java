@@ -0,0 +1,128 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.astronomy.ObservedSky;
+import ch.epfl.rigel.astronomy.Star;
+import ch.epfl.rigel.astronomy.StarCatalogue;
+import ch.epfl.rigel.coordinates.EquatorialCoordinates;
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.coordinates.HorizontalCoordinates;
+import ch.epfl.rigel.coordinates.StereographicProjection;
+import ch.epfl.rigel.math.Angle;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.transform.Transform;
+import javafx.stage.Stage;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Star rendering benchmark
+ *
+ * Measures the frames per second of the star rendering modes of the painter against the number of stars, on
+ * synthetic catalogues of stars uniformly distributed on the celestial sphere. Each frame is forced to be rendered by
+ * taking a snapshot of the canvas, whose cost is the same for both modes. The pixel buffer rasterizer is then
+ * measured alone, on full HD and 4K images.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public class StarRenderingBenchmark extends Application {
+    private static final int[] STAR_COUNTS = {5_000, 20_000, 50_000, 100_000, 200_000};
+    private static final int CANVAS_WIDTH = 1920;
+    private static final int CANVAS_HEIGHT = 1080;
+    private static final double FIELD_OF_VIEW_DEG = 100;
+    private static final int WARM_UP_FRAMES = 5;
+    private static final int MEASURED_FRAMES = 20;
+    private static final int[][] RASTERIZER_RESOLUTIONS = {{1920, 1080}, {3840, 2160}};
+
+    public static void main(String[] args) { launch(args); }
+
+    @Override
+    public void start(Stage primaryStage) {
+        Canvas canvas = new Canvas(CANVAS_WIDTH, CANVAS_HEIGHT);
+        SkyCanvasPainter painter = new SkyCanvasPainter(canvas);
+        painter.indicatedObjectNameProperty().set("");
+        painter.setAsterismsEnabled(false);
+        painter.setPlanetsEnabled(false);
+        painter.setSunEnabled(false);
+        painter.setMoonEnabled(false);
+
+        double dilation = CANVAS_WIDTH / (2 * Math.tan(Angle.ofDeg(FIELD_OF_VIEW_DEG) / 4));
+        Transform planeToCanvas = Transform.affine(dilation, 0, 0, -dilation, CANVAS_WIDTH / 2.0, CANVAS_HEIGHT / 2.0);
+        StereographicProjection projection = new StereographicProjection(HorizontalCoordinates.ofDeg(180, 45));
+        GeographicCoordinates where = GeographicCoordinates.ofDeg(6.57, 46.52);
+        ZonedDateTime when = ZonedDateTime.now();
+
+        System.out.printf("%10s %15s %15s%n", "stars", "fillOval (fps)", "buffer (fps)");
+        for (int starCount : STAR_COUNTS) {
+            ObservedSky sky = new ObservedSky(when, where, projection, syntheticCatalogue(starCount));
+            painter.setPixelBufferStarsEnabled(false);
+            double ovalFps = framesPerSecond(painter, canvas, sky, projection, planeToCanvas);
+            painter.setPixelBufferStarsEnabled(true);
+            double bufferFps = framesPerSecond(painter, canvas, sky, projection, planeToCanvas);
+            System.out.printf("%10d %15.1f %15.1f%n", starCount, ovalFps, bufferFps);
+        }
+
+        int starCount = STAR_COUNTS[STAR_COUNTS.length - 1];
+        System.out.printf("%n%10s %12s %17s%n", "stars", "resolution", "rasterizer (fps)");
+        for (int[] resolution : RASTERIZER_RESOLUTIONS) {
+            System.out.printf("%10d %12s %17.1f%n", starCount, resolution[0] + "x" + resolution[1],
+                    rasterizerFramesPerSecond(new StarRasterizer(), resolution[0], resolution[1], starCount));
+        }
+        Platform.exit();
+    }
+
+    private static double rasterizerFramesPerSecond(StarRasterizer rasterizer, int width, int height, int starCount) {
+        Random random = new Random(2020);
+        double[] points = new double[2 * starCount];
+        double[] diameters = new double[starCount];
+        int[] colors = new int[starCount];
+        for (int i = 0; i < starCount; ++i) {
+            points[2 * i] = random.nextDouble() * width;
+            points[2 * i + 1] = random.nextDouble() * height;
+            diameters[i] = 0.5 + 3.5 * random.nextDouble();
+            colors[i] = BlackBodyColor.argbForTemperatureIndex(30 + random.nextInt(300));
+        }
+        for (int i = 0; i < WARM_UP_FRAMES; ++i) {
+            rasterizer.rasterize(width, height, points, diameters, colors, starCount);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; ++i) {
+            rasterizer.rasterize(width, height, points, diameters, colors, starCount);
+        }
+        return MEASURED_FRAMES * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static double framesPerSecond(SkyCanvasPainter painter, Canvas canvas, ObservedSky sky,
+                                          StereographicProjection projection, Transform planeToCanvas) {
+        for (int i = 0; i < WARM_UP_FRAMES; ++i) {
+            painter.draw(sky, projection, planeToCanvas);
+            canvas.snapshot(null, null);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; ++i) {
+            painter.draw(sky, projection, planeToCanvas);
+            canvas.snapshot(null, null);
+        }
+        return MEASURED_FRAMES * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static StarCatalogue syntheticCatalogue(int starCount) {
+        //Fixed seed so that all runs draw the same stars
+        Random random = new Random(2020);
+        List<Star> stars = new ArrayList<>(starCount);
+        for (int i = 0; i < starCount; ++i) {
+            //Uniform distribution on the sphere
+            EquatorialCoordinates position = EquatorialCoordinates.of(random.nextDouble() * Angle.TAU,
+                    Math.asin(2 * random.nextDouble() - 1));
+            float magnitude = (float) (-1 + 8 * random.nextDouble());
+            float colorIndex = (float) (-0.4 + 2.4 * random.nextDouble());
+            stars.add(new Star(i, "?", position, magnitude, 0, colorIndex));
+        }
+        return new StarCatalogue(stars, List.of());
+    }
+}
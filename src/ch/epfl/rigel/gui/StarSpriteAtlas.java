@@ -0,0 +1,92 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.math.ClosedInterval;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Star sprite atlas
+ *
+ * Pre-rendered halo images of the realistic sky mode, keyed by quantised color temperature and diameter. Each sprite
+ * is rendered the first time it is needed and then reused, so drawing a star costs a single image copy instead of
+ * building and filling a radial gradient.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class StarSpriteAtlas {
+
+    private static final ClosedInterval TEMPERATURE_INTERVAL = ClosedInterval.of(1000, 40000);
+    private static final int TEMPERATURE_STEP = 500;
+    private static final double DIAMETER_STEP = 0.5;
+    private static final double MAX_DIAMETER = 40;
+
+    //Halo appearance, relative to the halo diameter (which is HALO_FACTOR times the star's diameter)
+    private static final double HALO_FACTOR = 5;
+    private static final double[] STOP_OFFSETS = {0, 0.2, 0.4};
+
+    private final Image[][] sprites;
+
+    /**
+     * Creates an empty sprite atlas
+     */
+    public StarSpriteAtlas() {
+        sprites = new Image[(int) (TEMPERATURE_INTERVAL.high() / TEMPERATURE_STEP) + 1]
+                [(int) (MAX_DIAMETER / DIAMETER_STEP) + 1];
+    }
+
+    /**
+     * Returns the halo sprite of a star, centered in the image
+     * @param temperature color temperature of the star (in kelvins)
+     * @param diameter diameter of the star on the canvas (in pixels)
+     * @return halo sprite of the star
+     */
+    public Image spriteFor(int temperature, double diameter) {
+        int temperatureIndex = (int) Math.round(TEMPERATURE_INTERVAL.clip(temperature) / TEMPERATURE_STEP);
+        int diameterIndex = (int) Math.round(Math.min(diameter, MAX_DIAMETER) / DIAMETER_STEP);
+        Image sprite = sprites[temperatureIndex][diameterIndex];
+        if (sprite == null) {
+            sprite = renderSprite(temperatureIndex * TEMPERATURE_STEP, diameterIndex * DIAMETER_STEP);
+            sprites[temperatureIndex][diameterIndex] = sprite;
+        }
+        return sprite;
+    }
+
+    private static Image renderSprite(int temperature, double diameter) {
+        Color starColor = BlackBodyColor.colorForTemperature(
+                (int) TEMPERATURE_INTERVAL.clip(temperature));
+        Color[] stopColors = {
+                starColor.deriveColor(1, 1.5, 1, 1),
+                starColor.deriveColor(1, 1.1, 0.1, 0.9),
+                starColor.deriveColor(1, 0, 0, 0)
+        };
+
+        double haloDiameter = Math.max(diameter, DIAMETER_STEP) * HALO_FACTOR;
+        //Everything past the last stop is transparent, so the sprite only covers the visible part of the halo
+        double visibleRadius = STOP_OFFSETS[STOP_OFFSETS.length - 1] * haloDiameter;
+        int size = Math.max(1, (int) Math.ceil(2 * visibleRadius));
+        double center = size / 2.0;
+
+        WritableImage sprite = new WritableImage(size, size);
+        PixelWriter writer = sprite.getPixelWriter();
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                double distance = Math.hypot(x + 0.5 - center, y + 0.5 - center);
+                writer.setColor(x, y, gradientAt(distance / haloDiameter, stopColors));
+            }
+        }
+        return sprite;
+    }
+
+    private static Color gradientAt(double offset, Color[] stopColors) {
+        for (int i = 1; i < STOP_OFFSETS.length; ++i) {
+            if (offset <= STOP_OFFSETS[i]) {
+                double t = (offset - STOP_OFFSETS[i - 1]) / (STOP_OFFSETS[i] - STOP_OFFSETS[i - 1]);
+                return stopColors[i - 1].interpolate(stopColors[i], t);
+            }
+        }
+        return stopColors[stopColors.length - 1];
+    }
+}
@@ -1,10 +1,14 @@
 package ch.epfl.rigel.gui;
 
+import ch.epfl.rigel.astronomy.SiderealTime;
 import javafx.animation.AnimationTimer;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.function.DoubleSupplier;
 
 /**
  * Time animator
@@ -13,11 +17,21 @@ import java.time.ZonedDateTime;
  * @author Malo Ranzetti (296956)
  */
 public final class TimeAnimator extends AnimationTimer {
+    private static final double SUB_PIXEL_THRESHOLD = 0.5;
+    //Frames computed in advance when frames are skipped are at most a minute apart
+    private static final int MAX_FRAME_STRIDE = 3600;
+
     private final DateTimeBean bean;
     private final SimpleBooleanProperty running;
+    private final BooleanProperty frameSkippingEnabled;
+    private DoubleSupplier pixelsPerRadian;
+    private ZonedDateTime lastRenderedTime;
     private ZonedDateTime initialDateTime;
     private TimeAccelerator accelerator;
     private long initialTime;
+    private long lastFrame;
+    private long lastRenderedFrame;
+    private SkyFramePrefetcher prefetcher;
 
     /**
      * TimeAnimator contructor
@@ -26,6 +40,8 @@ public final class TimeAnimator extends AnimationTimer {
     public TimeAnimator(DateTimeBean bean) {
         this.bean = bean;
         running = new SimpleBooleanProperty();
+        frameSkippingEnabled = new SimpleBooleanProperty(false);
+        pixelsPerRadian = () -> Double.POSITIVE_INFINITY;
     }
 
 
@@ -38,10 +54,34 @@ public final class TimeAnimator extends AnimationTimer {
      */
     @Override
     public void handle(long now) {
-        ZonedDateTime newTime = accelerator.adjust(initialDateTime, now - initialTime);
+        //Simulated time is sampled on a fixed frame grid so that upcoming frames can be computed in advance
+        long frame = Math.round((now - initialTime) / (double) SkyFramePrefetcher.FRAME_DURATION);
+        if (frame == lastFrame) return;
+        lastFrame = frame;
+        ZonedDateTime newTime = SkyFramePrefetcher.frameTime(accelerator, initialDateTime, frame);
+        //Nothing is rebuilt nor repainted while the sky has not moved by a visible amount since the last frame
+        if (isFrameSkippingEnabled() && maxDisplacementSinceLastFrame(newTime) < SUB_PIXEL_THRESHOLD) {
+            if (prefetcher != null) prefetcher.skip(frame);
+            return;
+        }
+        if (prefetcher != null) {
+            //The next frames rendered are expected to be as far apart as the last two
+            prefetcher.setFrameStride(isFrameSkippingEnabled() ? (int) Math.min(frame - lastRenderedFrame,
+                    MAX_FRAME_STRIDE) : 1);
+            prefetcher.advanceTo(frame);
+        }
+        lastRenderedTime = newTime;
+        lastRenderedFrame = frame;
         bean.setZonedDateTime(newTime);
     }
 
+    private double maxDisplacementSinceLastFrame(ZonedDateTime newTime) {
+        Duration elapsed = Duration.between(lastRenderedTime, newTime).abs();
+        double elapsedSeconds = elapsed.getSeconds() + elapsed.getNano() / 1e9;
+        //Nothing on screen moves faster than the rotation of the sky
+        return SiderealTime.RATE_PER_SECOND * elapsedSeconds * pixelsPerRadian.getAsDouble();
+    }
+
     /**
      * Starts the TimeAnimator. Once it is started, the handle(long) method of this TimeAnimator will be called
      * in every frame. The TimeAnimator can be stopped by calling stop().
@@ -51,6 +91,10 @@ public final class TimeAnimator extends AnimationTimer {
         super.start();
         initialDateTime = bean.getZonedDateTime();
         initialTime = System.nanoTime();
+        lastFrame = 0;
+        lastRenderedFrame = 0;
+        lastRenderedTime = initialDateTime;
+        if (prefetcher != null) prefetcher.start(accelerator, initialDateTime);
         setRunning(true);
     }
 
@@ -60,6 +104,7 @@ public final class TimeAnimator extends AnimationTimer {
     @Override
     public void stop() {
         super.stop();
+        if (prefetcher != null) prefetcher.stop();
         setRunning(false);
     }
 
@@ -69,6 +114,37 @@ public final class TimeAnimator extends AnimationTimer {
      */
     public void setAccelerator(TimeAccelerator accelerator) { this.accelerator = accelerator; }
 
+    /**
+     * Sets the prefetcher computing the upcoming frames of the animation in advance
+     * @param prefetcher prefetcher to use (can be null)
+     */
+    public void setPrefetcher(SkyFramePrefetcher prefetcher) { this.prefetcher = prefetcher; }
+
+    /**
+     * Sets the function estimating the maximum on-screen displacement (in pixels) of a point of the sky rotated by
+     * one radian, used to decide whether a frame can be skipped
+     * @param pixelsPerRadian maximum on-screen displacement per radian of rotation
+     */
+    public void setPixelsPerRadian(DoubleSupplier pixelsPerRadian) { this.pixelsPerRadian = pixelsPerRadian; }
+
+    /**
+     * Checks if frames in which the sky moves by less than a pixel are skipped
+     * @return true if frame skipping is enabled
+     */
+    public boolean isFrameSkippingEnabled() { return frameSkippingEnabled.get(); }
+
+    /**
+     * Returns property concerning frame skipping
+     * @return frame skipping enabled property
+     */
+    public BooleanProperty frameSkippingEnabledProperty() { return frameSkippingEnabled; }
+
+    /**
+     * Set frame skipping enabled
+     * @param frameSkippingEnabled new value
+     */
+    public void setFrameSkippingEnabled(boolean frameSkippingEnabled) { this.frameSkippingEnabled.set(frameSkippingEnabled); }
+
     /**
      * Return a ReadOnlyBooleanProperty of running
      * @return
@@ -0,0 +1,439 @@
+package ch.epfl.rigel.gui;
+
+import ch.epfl.rigel.astronomy.StarCatalogue;
+import javafx.application.Platform;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Time-lapse exporter
+ *
+ * Renders the frames of a time-lapse of a view of the sky with a headless sky renderer, and writes them either as a
+ * numbered sequence of PNG images or as a Motion JPEG AVI video. Frames are computed and encoded in parallel on worker
+ * pools, then written in order through a reorder buffer: a frame finished before the previous ones waits in the
+ * buffer. The number of frames in progress or waiting is bounded, so that the memory used does not depend on the
+ * length of the time-lapse.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class TimeLapseExporter implements AutoCloseable {
+
+    //Number of frames in progress or waiting to be written per thread
+    private static final int FRAMES_PER_THREAD = 3;
+    private static final float JPEG_QUALITY = 0.9f;
+
+    /**
+     * Output formats
+     */
+    public enum Format {
+        PNG_SEQUENCE, MJPEG_AVI;
+
+        /**
+         * List of all formats
+         */
+        public static final List<Format> ALL = List.of(Format.values());
+    }
+
+    private final HeadlessSkyRenderer renderer;
+    private final ExecutorService encoders;
+    private final int threads;
+
+    /**
+     * Time-lapse exporter constructor
+     * @param catalogue catalogue of stars and asterisms
+     * @param width width of the frames (in pixels)
+     * @param height height of the frames (in pixels)
+     * @param threads number of threads computing and encoding frames
+     * @throws IllegalArgumentException if the size of the frames or the number of threads is not strictly positive
+     */
+    public TimeLapseExporter(StarCatalogue catalogue, int width, int height, int threads) {
+        this.renderer = new HeadlessSkyRenderer(catalogue, width, height, threads);
+        this.threads = threads;
+        this.encoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Rigel time-lapse encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the times of the frames of a time-lapse, spaced by a fixed step of simulated time
+     * @param start time of the first frame
+     * @param end time after which there are no more frames
+     * @param step simulated time between two frames
+     * @return times of the frames
+     * @throws IllegalArgumentException if the step is not strictly positive
+     */
+    public static List<ZonedDateTime> frameTimes(ZonedDateTime start, ZonedDateTime end, Duration step) {
+        if (step.isNegative() || step.isZero()) throw new IllegalArgumentException("Step must be strictly positive");
+        List<ZonedDateTime> times = new ArrayList<>();
+        for (ZonedDateTime time = start; !time.isAfter(end); time = time.plus(step)) {
+            times.add(time);
+        }
+        return times;
+    }
+
+    /**
+     * Returns the times of the frames of a time-lapse, as the time animator would show them with the given accelerator
+     * @param start time of the first frame
+     * @param end time after which there are no more frames
+     * @param accelerator accelerator of the simulated time
+     * @param framesPerSecond frame rate of the time-lapse
+     * @return times of the frames
+     * @throws IllegalArgumentException if the frame rate is not strictly positive, or if the accelerator does not
+     * move the time forward
+     */
+    public static List<ZonedDateTime> frameTimes(ZonedDateTime start, ZonedDateTime end, TimeAccelerator accelerator,
+                                                 double framesPerSecond) {
+        if (!(framesPerSecond > 0)) throw new IllegalArgumentException("Frame rate must be strictly positive");
+        //An accelerator that does not move the time forward would never reach the end
+        if (!accelerator.adjust(start, 1_000_000_000L).isAfter(start))
+            throw new IllegalArgumentException("Accelerator must move the time forward");
+        List<ZonedDateTime> times = new ArrayList<>();
+        for (long frame = 0; ; ++frame) {
+            ZonedDateTime time = accelerator.adjust(start, Math.round(frame * 1e9 / framesPerSecond));
+            if (time.isAfter(end)) break;
+            times.add(time);
+        }
+        return times;
+    }
+
+    /**
+     * Exports a time-lapse. Blocks until all frames are written, so it must not be called from the JavaFX application
+     * thread, which must be running
+     * @param view view of the sky (its time of observation is ignored)
+     * @param times times of the frames
+     * @param output directory of the PNG images, or AVI file
+     * @param format output format
+     * @param framesPerSecond frame rate of the video (ignored for PNG images)
+     * @return number of frames written
+     * @throws IOException if a frame could not be rendered or written
+     * @throws IllegalArgumentException if the frame rate is not strictly positive
+     */
+    public int export(SkyView view, List<ZonedDateTime> times, Path output, Format format, double framesPerSecond)
+            throws IOException {
+        if (!(framesPerSecond > 0)) throw new IllegalArgumentException("Frame rate must be strictly positive");
+        int capacity = FRAMES_PER_THREAD * threads;
+        Semaphore window = new Semaphore(capacity);
+
+        try (FrameSink sink = format == Format.PNG_SEQUENCE
+                ? new PngSequence(output)
+                : new MjpegAvi(output, renderer.getWidth(), renderer.getHeight(), framesPerSecond)) {
+            ReorderBuffer buffer = new ReorderBuffer(sink, window);
+            for (int i = 0; i < times.size() && !buffer.hasFailed(); ++i) {
+                //Waits for a frame to be written before starting a new one
+                window.acquireUninterruptibly();
+                int index = i;
+                renderer.renderPixels(view.at(times.get(i)))
+                        .thenApplyAsync(pixels -> encode(pixels, format), encoders)
+                        .whenComplete((frame, e) -> {
+                            if (e == null) buffer.put(index, frame);
+                            else buffer.fail(e);
+                        });
+            }
+            //All the frames are written (or discarded) once all permits are released
+            window.acquireUninterruptibly(capacity);
+            buffer.checkFailure();
+            return times.size();
+        }
+    }
+
+    private byte[] encode(int[] pixels, Format format) {
+        int width = renderer.getWidth();
+        int height = renderer.getHeight();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            if (format == Format.PNG_SEQUENCE) {
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                image.setRGB(0, 0, width, height, pixels, 0, width);
+                ImageIO.write(image, "png", bytes);
+            } else {
+                //JPEG images have no alpha channel
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                image.setRGB(0, 0, width, height, pixels, 0, width);
+                ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+                ImageWriteParam parameters = writer.getDefaultWriteParam();
+                parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                parameters.setCompressionQuality(JPEG_QUALITY);
+                try (ImageOutputStream stream = ImageIO.createImageOutputStream(bytes)) {
+                    writer.setOutput(stream);
+                    writer.write(null, new IIOImage(image, null, null), parameters);
+                } finally {
+                    writer.dispose();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Stops the worker pools, frames in progress are completed
+     */
+    @Override
+    public void close() {
+        renderer.close();
+        encoders.shutdown();
+    }
+
+    //Frames finished out of order, written as soon as all the previous ones are
+    private static final class ReorderBuffer {
+        private final FrameSink sink;
+        private final Semaphore window;
+        private final Map<Integer, byte[]> pending;
+        private int next;
+        private Throwable failure;
+
+        private ReorderBuffer(FrameSink sink, Semaphore window) {
+            this.sink = sink;
+            this.window = window;
+            this.pending = new HashMap<>();
+        }
+
+        private synchronized void put(int index, byte[] frame) {
+            pending.put(index, frame);
+            try {
+                while (failure == null && pending.containsKey(next)) {
+                    sink.write(pending.get(next));
+                    pending.remove(next);
+                    ++next;
+                    window.release();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (failure != null) discardPending();
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (failure == null) failure = e;
+            window.release();
+            discardPending();
+        }
+
+        //Frames that will never be written give back their place in the window
+        private void discardPending() {
+            window.release(pending.size());
+            pending.clear();
+        }
+
+        private synchronized boolean hasFailed() {
+            return failure != null;
+        }
+
+        private synchronized void checkFailure() throws IOException {
+            if (failure == null) return;
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Could not render frame", cause);
+        }
+    }
+
+    private interface FrameSink extends AutoCloseable {
+        void write(byte[] frame) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    //Numbered PNG images in a directory
+    private static final class PngSequence implements FrameSink {
+        private final Path directory;
+        private int count;
+
+        private PngSequence(Path directory) throws IOException {
+            this.directory = Files.createDirectories(directory);
+        }
+
+        @Override
+        public void write(byte[] frame) throws IOException {
+            Files.write(directory.resolve(String.format(Locale.ROOT, "frame_%06d.png", count++)), frame);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /*
+    Motion JPEG AVI file: a RIFF file with a header list (main header, header and format of the video stream), the list
+    of the JPEG frames and an index of the frames. The sizes and frame counts of the headers are written on close.
+    A RIFF file is limited to 4 GB: a frame which would not fit is refused, the frames written before remain readable.
+     */
+    private static final class MjpegAvi implements FrameSink {
+        private static final int AVIF_HASINDEX = 0x10;
+        private static final int AVIIF_KEYFRAME = 0x10;
+        //Offsets of the fields written on close
+        private static final int RIFF_SIZE = 4;
+        private static final int TOTAL_FRAMES = 48;
+        private static final int STREAM_LENGTH = 140;
+        private static final int MOVI_SIZE = 216;
+        private static final int MOVI_DATA = 224;
+        //Sizes and offsets of a RIFF file are unsigned 32 bits integers, which limits the file to 4 GB
+        private static final long MAX_FILE_SIZE = 0xFFFF_FFFFL;
+
+        private final RandomAccessFile file;
+        private final ByteArrayOutputStream index;
+        private int count;
+        private long position;
+
+        private MjpegAvi(Path output, int width, int height, double framesPerSecond) throws IOException {
+            Path parent = output.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            file = new RandomAccessFile(output.toFile(), "rw");
+            file.setLength(0);
+            index = new ByteArrayOutputStream();
+
+            //Frame rate as a fraction, precise to the thousandth of frame per second
+            int scale = 1000;
+            int rate = (int) Math.round(framesPerSecond * scale);
+            ByteBuffer header = littleEndian(MOVI_DATA);
+            header.put(fourCc("RIFF")).putInt(0).put(fourCc("AVI "));
+            header.put(fourCc("LIST")).putInt(192).put(fourCc("hdrl"));
+            header.put(fourCc("avih")).putInt(56)
+                    .putInt((int) Math.round(1e6 / framesPerSecond)).putInt(0).putInt(0).putInt(AVIF_HASINDEX)
+                    .putInt(0).putInt(0).putInt(1).putInt(0).putInt(width).putInt(height)
+                    .putInt(0).putInt(0).putInt(0).putInt(0);
+            header.put(fourCc("LIST")).putInt(116).put(fourCc("strl"));
+            header.put(fourCc("strh")).putInt(56).put(fourCc("vids")).put(fourCc("MJPG"))
+                    .putInt(0).putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putInt(scale).putInt(rate).putInt(0).putInt(0).putInt(0).putInt(-1).putInt(0)
+                    .putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+            header.put(fourCc("strf")).putInt(40)
+                    .putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) 24)
+                    .put(fourCc("MJPG")).putInt(width * height * 3).putInt(0).putInt(0).putInt(0).putInt(0);
+            header.put(fourCc("LIST")).putInt(0).put(fourCc("movi"));
+            file.write(header.array());
+            position = MOVI_DATA;
+        }
+
+        @Override
+        public void write(byte[] frame) throws IOException {
+            //Chunks are aligned on two bytes
+            int padding = frame.length % 2;
+            //The file ends with the index, of one entry per frame
+            long fileSize = position + 8 + frame.length + padding + 8 + index.size() + 16;
+            if (fileSize > MAX_FILE_SIZE)
+                throw new IOException("AVI file would exceed 4 GB after " + count + " frames, export a PNG sequence instead");
+            ByteBuffer chunk = littleEndian(8);
+            chunk.put(fourCc("00dc")).putInt(frame.length);
+            file.write(chunk.array());
+            file.write(frame);
+            if (padding != 0) file.write(0);
+
+            //Offsets of the index are relative to the start of the data of the list of frames
+            ByteBuffer entry = littleEndian(16);
+            entry.put(fourCc("00dc")).putInt(AVIIF_KEYFRAME).putInt((int) (position - MOVI_DATA + 4)).putInt(frame.length);
+            index.write(entry.array());
+            position += 8 + frame.length + padding;
+            ++count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                ByteBuffer indexHeader = littleEndian(8);
+                indexHeader.put(fourCc("idx1")).putInt(index.size());
+                file.write(indexHeader.array());
+                file.write(index.toByteArray());
+
+                writeInt(RIFF_SIZE, (int) (file.length() - 8));
+                writeInt(TOTAL_FRAMES, count);
+                writeInt(STREAM_LENGTH, count);
+                writeInt(MOVI_SIZE, (int) (position - MOVI_DATA + 4));
+            } finally {
+                file.close();
+            }
+        }
+
+        private void writeInt(long offset, int value) throws IOException {
+            file.seek(offset);
+            file.write(littleEndian(4).putInt(value).array());
+        }
+
+        private static ByteBuffer littleEndian(int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static byte[] fourCc(String code) {
+            return code.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Exports a time-lapse of a Rigel view, with the default size
+     * @param args Rigel view file (giving the start time), end time (ISO format), step of simulated time (ISO
+     *             duration, e.g. PT1M), frame rate, output directory or AVI file
+     */
+    public static void main(String[] args) {
+        if (args.length != 5) {
+            System.err.println("Usage: TimeLapseExporter <view.rgvf> <end> <step> <frames per second> <output>");
+            return;
+        }
+
+        StarCatalogue catalogue;
+        try {
+            catalogue = HeadlessSkyRenderer.loadCatalogue();
+        } catch (Exception e) {
+            System.err.println("Error loading star data");
+            return;
+        }
+
+        SkyView view;
+        List<ZonedDateTime> times;
+        double framesPerSecond;
+        try {
+            view = SkyView.readFrom(Paths.get(args[0]));
+            times = frameTimes(view.when(), ZonedDateTime.parse(args[1]), Duration.parse(args[2]));
+            framesPerSecond = Double.parseDouble(args[3]);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            return;
+        }
+        Path output = Paths.get(args[4]);
+        Format format = output.getFileName().toString().toLowerCase().endsWith(".avi")
+                ? Format.MJPEG_AVI : Format.PNG_SEQUENCE;
+
+        Platform.startup(() -> {});
+        long start = System.nanoTime();
+        try (TimeLapseExporter exporter = new TimeLapseExporter(catalogue, HeadlessSkyRenderer.DEFAULT_WIDTH,
+                HeadlessSkyRenderer.DEFAULT_HEIGHT, Runtime.getRuntime().availableProcessors())) {
+            int frames = exporter.export(view, times, output, format, framesPerSecond);
+            System.out.printf("Exported %d frames in %.1f s%n", frames, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not export time-lapse");
+            e.printStackTrace();
+        } finally {
+            Platform.exit();
+        }
+    }
+}
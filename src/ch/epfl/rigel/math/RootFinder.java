@@ -0,0 +1,96 @@
+package ch.epfl.rigel.math;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Root finder
+ *
+ * Refines the roots and the maxima of functions of the time, given in days since a start time, to the nearest second.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class RootFinder {
+
+    private static final double SECONDS_PER_DAY = 86400;
+    private static final double TOLERANCE = 1 / SECONDS_PER_DAY;
+    private static final double INVERSE_GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+
+    private RootFinder() {}
+
+    /**
+     * Returns the root of a function changing sign between t0 and t1, by bisection
+     * @param f function of the time (in days)
+     * @param t0 start of the interval (in days)
+     * @param f0 value of the function at t0
+     * @param t1 end of the interval (in days)
+     * @return root of the function, to the nearest second
+     */
+    public static double bisect(DoubleUnaryOperator f, double t0, double f0, double t1) {
+        while (t1 - t0 > TOLERANCE) {
+            double middle = (t0 + t1) / 2;
+            double fMiddle = f.applyAsDouble(middle);
+            if ((fMiddle > 0) == (f0 > 0)) {
+                t0 = middle;
+                f0 = fMiddle;
+            } else {
+                t1 = middle;
+            }
+        }
+        return (t0 + t1) / 2;
+    }
+
+    /**
+     * Returns the maximum of a function having a single maximum between t0 and t1, by golden section search
+     * (the minimum of a function is the maximum of its opposite)
+     * @param f function of the time (in days)
+     * @param t0 start of the interval (in days)
+     * @param t1 end of the interval (in days)
+     * @return time of the maximum of the function, to the nearest second
+     */
+    public static double maximize(DoubleUnaryOperator f, double t0, double t1) {
+        double c = t1 - INVERSE_GOLDEN_RATIO * (t1 - t0);
+        double d = t0 + INVERSE_GOLDEN_RATIO * (t1 - t0);
+        double fc = f.applyAsDouble(c);
+        double fd = f.applyAsDouble(d);
+        while (t1 - t0 > TOLERANCE) {
+            if (fc > fd) {
+                t1 = d;
+                d = c;
+                fd = fc;
+                c = t1 - INVERSE_GOLDEN_RATIO * (t1 - t0);
+                fc = f.applyAsDouble(c);
+            } else {
+                t0 = c;
+                c = d;
+                fc = fd;
+                d = t0 + INVERSE_GOLDEN_RATIO * (t1 - t0);
+                fd = f.applyAsDouble(d);
+            }
+        }
+        return (t0 + t1) / 2;
+    }
+
+    /**
+     * Returns the number of days between two times
+     * @param start start time
+     * @param end end time
+     * @return number of days from start to end (negative if end is before start)
+     */
+    public static double daysBetween(ZonedDateTime start, ZonedDateTime end) {
+        Duration duration = Duration.between(start, end);
+        return (duration.getSeconds() + duration.getNano() / 1e9) / SECONDS_PER_DAY;
+    }
+
+    /**
+     * Returns the time a given number of days after a start time
+     * @param start start time
+     * @param days number of days (may be fractional)
+     * @return time days after start, to the nearest nanosecond
+     */
+    public static ZonedDateTime plusDays(ZonedDateTime start, double days) {
+        return start.plusNanos(Math.round(days * SECONDS_PER_DAY * 1e9));
+    }
+}
@@ -0,0 +1,134 @@
+package ch.epfl.rigel.service;
+
+import ch.epfl.rigel.astronomy.AsterismLoader;
+import ch.epfl.rigel.astronomy.HygDatabaseLoader;
+import ch.epfl.rigel.astronomy.StarCatalogue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sky position load test
+ *
+ * Sends requests to a sky position server from concurrent clients and reports the throughput and the median (p50)
+ * and 99th percentile (p99) latencies. The requests cycle through a small set of queries, so that identical requests
+ * are regularly in flight at the same time. Without a server address, a server is started in process.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class SkyPositionLoadTest {
+
+    private static final int DEFAULT_CLIENTS = 32;
+    private static final int DEFAULT_REQUESTS_PER_CLIENT = 200;
+    private static final String TIME = "2020-03-01T22:00:00%2B01:00";
+    private static final List<String> QUERIES = List.of(
+            "/position?name=Rigel&lon=6.57&lat=46.52&time=" + TIME,
+            "/position?name=Sirius&lon=6.57&lat=46.52&time=" + TIME,
+            "/position?name=Jupiter&lon=-73.98&lat=40.75&time=" + TIME,
+            "/visibility?name=Betelgeuse&lon=6.57&lat=46.52&time=" + TIME,
+            "/visibility?name=Moon&lon=139.69&lat=35.69&time=" + TIME,
+            "/nearest?az=180&alt=30&radius=5&lon=6.57&lat=46.52&time=" + TIME,
+            "/nearest?az=90&alt=45&radius=10&lon=-73.98&lat=40.75&time=" + TIME);
+
+    private SkyPositionLoadTest() {
+    }
+
+    /**
+     * Runs the load test
+     * @param args server address (e.g. http://localhost:8080, a server is started in process if omitted or "-"),
+     *             number of clients and number of requests per client (both optional)
+     * @throws Exception if the test cannot run
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CLIENTS;
+        int requestsPerClient = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS_PER_CLIENT;
+
+        SkyPositionServer localServer = null;
+        String address;
+        if (args.length > 0 && !args[0].equals("-")) {
+            address = args[0];
+        } else {
+            localServer = new SkyPositionServer(loadCatalogue(),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            localServer.start();
+            address = "http://localhost:" + localServer.port();
+        }
+
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newCachedThreadPool(daemonThreads())).build();
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients, daemonThreads());
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger failures = new AtomicInteger();
+
+        long start = System.nanoTime();
+        Future<?>[] runs = new Future<?>[clients];
+        for (int c = 0; c < clients; ++c) {
+            int clientIndex = c;
+            runs[c] = clientThreads.submit(() -> {
+                for (int r = 0; r < requestsPerClient; ++r) {
+                    int index = clientIndex * requestsPerClient + r;
+                    HttpRequest request = HttpRequest.newBuilder(
+                            URI.create(address + QUERIES.get(index % QUERIES.size()))).GET().build();
+                    long requestStart = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) failures.incrementAndGet();
+                    } catch (IOException | InterruptedException e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - requestStart;
+                }
+                return null;
+            });
+        }
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf(Locale.ROOT, "%d requests from %d clients in %.2f s (%.0f requests/s), %d failed%n",
+                latencies.length, clients, seconds, latencies.length / seconds, failures.get());
+        System.out.printf(Locale.ROOT, "p50: %.2f ms, p99: %.2f ms%n",
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6);
+
+        clientThreads.shutdown();
+        if (localServer != null) localServer.close();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.ceil(p * sorted.length) - 1];
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "Rigel load test client");
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static StarCatalogue loadCatalogue() throws IOException {
+        try (InputStream hs = SkyPositionLoadTest.class.getResourceAsStream("/hygdata_v3.csv");
+             InputStream ast = SkyPositionLoadTest.class.getResourceAsStream("/asterisms.txt")) {
+            return new StarCatalogue.Builder()
+                    .loadFrom(hs, HygDatabaseLoader.INSTANCE)
+                    .loadFrom(ast, AsterismLoader.INSTANCE)
+                    .build();
+        }
+    }
+}
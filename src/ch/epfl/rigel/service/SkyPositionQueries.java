@@ -0,0 +1,114 @@
+package ch.epfl.rigel.service;
+
+import ch.epfl.rigel.astronomy.*;
+import ch.epfl.rigel.coordinates.*;
+import ch.epfl.rigel.math.Angle;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Sky position queries
+ *
+ * Answers position, visibility and nearest object queries for an observer. The star catalogue is shared by all
+ * queries and never modified, so queries can be answered concurrently from any thread.
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class SkyPositionQueries {
+
+    //Objects other than the Sun and the Moon are considered visible once the Sun is below civil twilight
+    private static final double TWILIGHT_SUN_ALTITUDE = Angle.ofDeg(-6);
+
+    private final StarCatalogue catalogue;
+    private final Map<String, Star> starsByName;
+
+    /**
+     * Sky position queries constructor
+     * @param catalogue catalogue of stars and asterisms
+     */
+    public SkyPositionQueries(StarCatalogue catalogue) {
+        this.catalogue = catalogue;
+        Map<String, Star> starsByName = new HashMap<>();
+        for (Star star : catalogue.stars()) {
+            //Stars without a proper name can share their names, only the first one of the catalogue is kept
+            starsByName.putIfAbsent(star.name(), star);
+        }
+        this.starsByName = Collections.unmodifiableMap(starsByName);
+    }
+
+    /**
+     * Returns the object of the given name at the given time, if it exists
+     * @param name name of the object
+     * @param when time of observation
+     * @return object of the given name, or an empty optional if there is none
+     */
+    public Optional<CelestialObject> object(String name, ZonedDateTime when) {
+        Star star = starsByName.get(name);
+        if (star != null) return Optional.of(star);
+        for (CelestialObject object : solarSystemAt(when)) {
+            if (object.name().equals(name)) return Optional.of(object);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the position of an object for the given observer
+     * @param object object to locate
+     * @param when time of observation
+     * @param where position of the observer
+     * @return horizontal coordinates of the object
+     */
+    public HorizontalCoordinates position(CelestialObject object, ZonedDateTime when, GeographicCoordinates where) {
+        return new EquatorialToHorizontalConversion(when, where).apply(object.equatorialPos());
+    }
+
+    /**
+     * Checks if an object is visible for the given observer: it must be above the horizon and, unless it is the Sun
+     * or the Moon, the Sun must be below civil twilight
+     * @param object object to check
+     * @param when time of observation
+     * @param where position of the observer
+     * @return true if the object is visible
+     */
+    public boolean isVisible(CelestialObject object, ZonedDateTime when, GeographicCoordinates where) {
+        if (position(object, when, where).alt() <= 0) return false;
+        if (object instanceof Sun || object instanceof Moon) return true;
+        Sun sun = SunModel.SUN.at(Epoch.J2010.daysUntil(when), new EclipticToEquatorialConversion(when));
+        return position(sun, when, where).alt() < TWILIGHT_SUN_ALTITUDE;
+    }
+
+    /**
+     * Returns the object closest to the given direction, within the given angular distance
+     * @param direction direction to search around
+     * @param maxDistance maximal angular distance (in radians)
+     * @param when time of observation
+     * @param where position of the observer
+     * @return closest object, or an empty optional if there is none within the distance
+     */
+    public Optional<CelestialObject> nearest(HorizontalCoordinates direction, double maxDistance, ZonedDateTime when,
+                                             GeographicCoordinates where) {
+        //Centered on the direction, the projection maps an angular distance d from it to a radius tan(d / 2)
+        ObservedSky sky = new ObservedSky(when, where, new StereographicProjection(direction), catalogue);
+        return sky.objectClosestTo(CartesianCoordinates.of(0, 0), Math.tan(maxDistance / 2));
+    }
+
+    private static List<CelestialObject> solarSystemAt(ZonedDateTime when) {
+        double daysSinceJ2010 = Epoch.J2010.daysUntil(when);
+        EclipticToEquatorialConversion conversion = new EclipticToEquatorialConversion(when);
+        List<CelestialObject> objects = new ArrayList<>();
+        objects.add(SunModel.SUN.at(daysSinceJ2010, conversion));
+        objects.add(MoonModel.MOON.at(daysSinceJ2010, conversion));
+        for (PlanetModel planetModel : PlanetModel.ALL) {
+            if (planetModel == PlanetModel.EARTH) continue;
+            objects.add(planetModel.at(daysSinceJ2010, conversion));
+        }
+        return objects;
+    }
+}
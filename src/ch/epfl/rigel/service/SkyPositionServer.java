@@ -0,0 +1,288 @@
+package ch.epfl.rigel.service;
+
+import ch.epfl.rigel.astronomy.AsterismLoader;
+import ch.epfl.rigel.astronomy.CelestialObject;
+import ch.epfl.rigel.astronomy.HygDatabaseLoader;
+import ch.epfl.rigel.astronomy.StarCatalogue;
+import ch.epfl.rigel.coordinates.GeographicCoordinates;
+import ch.epfl.rigel.coordinates.HorizontalCoordinates;
+import ch.epfl.rigel.math.Angle;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Sky position server
+ *
+ * Small HTTP service answering sky position queries in JSON, on the HTTP server of the JDK. Every request runs on
+ * its own virtual thread when the runtime supports them (Java 21 and later), on a cached thread pool otherwise.
+ * Identical requests received while one is being answered wait for its response instead of computing it again.
+ *
+ * Endpoints (angles in degrees, time in ISO-8601 format with an offset, the current time if omitted):
+ * /position?name=&amp;lon=&amp;lat=[&amp;time=], /visibility?name=&amp;lon=&amp;lat=[&amp;time=] and
+ * /nearest?az=&amp;alt=&amp;lon=&amp;lat=[&amp;radius=][&amp;time=]
+ *
+ * @author Philip Hamelink (311769)
+ * @author Malo Ranzetti (296956)
+ */
+public final class SkyPositionServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 8080;
+    private static final double DEFAULT_NEAREST_RADIUS_DEG = 5;
+
+    private final SkyPositionQueries queries;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    //Responses being computed, keyed by canonical request
+    private final ConcurrentMap<String, CompletableFuture<Response>> inFlight;
+
+    /**
+     * Creates a server answering queries on the given catalogue, it must be started to accept requests
+     * @param catalogue catalogue of stars and asterisms, shared by all requests
+     * @param address address to listen on (port 0 picks a free port)
+     * @throws IOException if the server cannot listen on the address
+     */
+    public SkyPositionServer(StarCatalogue catalogue, InetSocketAddress address) throws IOException {
+        this.queries = new SkyPositionQueries(catalogue);
+        this.inFlight = new ConcurrentHashMap<>();
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/position", exchange -> handle(exchange, this::position));
+        server.createContext("/visibility", exchange -> handle(exchange, this::visibility));
+        server.createContext("/nearest", exchange -> handle(exchange, this::nearest));
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        try {
+            //Virtual threads only exist from Java 21, the project still targets Java 11
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "Rigel sky position server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on
+     * @return port of the server
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, requests in progress are given a second to complete
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange, Query query) throws IOException {
+        Response response;
+        if (!exchange.getRequestMethod().equals("GET")) {
+            response = Response.error(405, "Only GET requests are supported");
+        } else {
+            response = respond(exchange.getRequestURI(), query);
+        }
+
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    //Only the first of identical concurrent requests computes the response, the others wait for it
+    private Response collapsed(String key, Supplier<Response> computation) {
+        CompletableFuture<Response> ours = new CompletableFuture<>();
+        CompletableFuture<Response> existing = inFlight.putIfAbsent(key, ours);
+        if (existing != null) return existing.join();
+        try {
+            ours.complete(computation.get());
+        } catch (RuntimeException e) {
+            ours.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, ours);
+        }
+        return ours.join();
+    }
+
+    private static Response answer(Query query, Map<String, String> parameters) {
+        try {
+            return query.answer(parameters);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return Response.error(400, "Invalid parameters: " + e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return Response.error(500, "Internal error");
+        }
+    }
+
+    private Response position(Map<String, String> parameters) {
+        ZonedDateTime when = time(parameters);
+        GeographicCoordinates where = location(parameters);
+        Optional<CelestialObject> object = queries.object(required(parameters, "name"), when);
+        if (object.isEmpty()) return Response.error(404, "Unknown object");
+        HorizontalCoordinates position = queries.position(object.get(), when, where);
+        return Response.ok(String.format(Locale.ROOT, "{\"name\":%s,\"time\":%s,\"azDeg\":%.4f,\"altDeg\":%.4f}",
+                quote(object.get().name()), quote(when.toString()), position.azDeg(), position.altDeg()));
+    }
+
+    private Response visibility(Map<String, String> parameters) {
+        ZonedDateTime when = time(parameters);
+        GeographicCoordinates where = location(parameters);
+        Optional<CelestialObject> object = queries.object(required(parameters, "name"), when);
+        if (object.isEmpty()) return Response.error(404, "Unknown object");
+        HorizontalCoordinates position = queries.position(object.get(), when, where);
+        return Response.ok(String.format(Locale.ROOT,
+                "{\"name\":%s,\"time\":%s,\"aboveHorizon\":%b,\"visible\":%b,\"altDeg\":%.4f,\"magnitude\":%.2f}",
+                quote(object.get().name()), quote(when.toString()), position.alt() > 0,
+                queries.isVisible(object.get(), when, where), position.altDeg(), object.get().magnitude()));
+    }
+
+    private Response nearest(Map<String, String> parameters) {
+        ZonedDateTime when = time(parameters);
+        GeographicCoordinates where = location(parameters);
+        HorizontalCoordinates direction = HorizontalCoordinates.ofDeg(
+                Double.parseDouble(required(parameters, "az")), Double.parseDouble(required(parameters, "alt")));
+        double radiusDeg = parameters.containsKey("radius")
+                ? Double.parseDouble(parameters.get("radius")) : DEFAULT_NEAREST_RADIUS_DEG;
+        if (!(radiusDeg > 0 && radiusDeg < 180)) throw new IllegalArgumentException("radius must be in ]0, 180[");
+
+        Optional<CelestialObject> object = queries.nearest(direction, Angle.ofDeg(radiusDeg), when, where);
+        if (object.isEmpty()) return Response.error(404, "No object within the radius");
+        HorizontalCoordinates position = queries.position(object.get(), when, where);
+        return Response.ok(String.format(Locale.ROOT, "{\"name\":%s,\"time\":%s,\"azDeg\":%.4f,\"altDeg\":%.4f}",
+                quote(object.get().name()), quote(when.toString()), position.azDeg(), position.altDeg()));
+    }
+
+    private static ZonedDateTime time(Map<String, String> parameters) {
+        return parameters.containsKey("time") ? ZonedDateTime.parse(parameters.get("time")) : ZonedDateTime.now();
+    }
+
+    private static GeographicCoordinates location(Map<String, String> parameters) {
+        return GeographicCoordinates.ofDeg(Double.parseDouble(required(parameters, "lon")),
+                Double.parseDouble(required(parameters, "lat")));
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) throw new IllegalArgumentException("missing parameter " + name);
+        return value;
+    }
+
+    private Response respond(URI uri, Query query) {
+        SortedMap<String, String> parameters;
+        try {
+            parameters = parseQuery(uri.getRawQuery());
+        } catch (IllegalArgumentException e) {
+            //Malformed escape in the query
+            return Response.error(400, "Invalid parameters: " + e.getMessage());
+        }
+        String key = uri.getPath() + parameters;
+        return collapsed(key, () -> answer(query, parameters));
+    }
+
+    //Sorted so that requests only differing by the order of their parameters are identical
+    private static SortedMap<String, String> parseQuery(String rawQuery) {
+        SortedMap<String, String> parameters = new TreeMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return parameters;
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0) continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    @FunctionalInterface
+    private interface Query {
+        Response answer(Map<String, String> parameters);
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quote(message) + "}");
+        }
+    }
+
+    /**
+     * Starts a server on the loopback interface
+     * @param args port to listen on (optional, 8080 by default)
+     */
+    public static void main(String[] args) {
+        StarCatalogue catalogue;
+        try (InputStream hs = SkyPositionServer.class.getResourceAsStream("/hygdata_v3.csv");
+             InputStream ast = SkyPositionServer.class.getResourceAsStream("/asterisms.txt")) {
+            catalogue = new StarCatalogue.Builder()
+                    .loadFrom(hs, HygDatabaseLoader.INSTANCE)
+                    .loadFrom(ast, AsterismLoader.INSTANCE)
+                    .build();
+        } catch (Exception e) {
+            System.err.println("Error loading star data");
+            return;
+        }
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        try {
+            SkyPositionServer server = new SkyPositionServer(catalogue,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.start();
+            System.out.println("Sky position server listening on port " + server.port());
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+        }
+    }
+}